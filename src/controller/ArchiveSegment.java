@@ -0,0 +1,675 @@
+package controller;
+
+import model.Expense;
+
+import java.io.*;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable, compressed block of old expenses. Rows are stored column by column:
+ * delta-encoded dates, fixed-point amounts (cents), dictionary-encoded categories
+ * and currencies, and deflated id/description blocks. The header keeps min/max
+ * values, a month x category total matrix in the ledger's base currency and a bloom
+ * filter of the ids, so sums and id lookups can be answered without touching the
+ * rows. A summary block after the header holds the per-month quantile sketches,
+ * histograms and daily totals the ledger's stats need, so opening a ledger never
+ * decodes archived rows. Rows that are decoded are kept in a soft cache until the
+ * heap needs the space back.
+ */
+class ArchiveSegment {
+    private static final int MAGIC = 0x45585347; // "EXSG"
+    private static final int VERSION = 5;
+    private static final int TEXT_BLOCK_ROWS = 1024;
+    private static final int BLOOM_BITS_PER_ID = 10;
+    private static final int BLOOM_HASHES = 7;
+
+    private final File file;
+    private final int version;
+    private final int count;
+    private final LocalDate minDate;
+    private final LocalDate maxDate;
+    private final long maxAmount;
+    private final String baseCurrency;
+    private final long ratesFingerprint;
+    private final YearMonth firstMonth;
+    private final String[] categories;
+    private final String[] currencies;
+    private final long[][] monthCategoryTotals;
+    private final long[] idFilter;
+    private final long summaryOffset;
+    private final long headerLength;
+    private SoftReference<Columns> cachedColumns = new SoftReference<>(null);
+
+    private ArchiveSegment(File file, int version, int count, LocalDate minDate, LocalDate maxDate, long maxAmount,
+                           String baseCurrency, long ratesFingerprint, YearMonth firstMonth, String[] categories,
+                           String[] currencies,
+                           long[][] monthCategoryTotals, long[] idFilter, long summaryOffset, long headerLength) {
+        this.file = file;
+        this.version = version;
+        this.count = count;
+        this.minDate = minDate;
+        this.maxDate = maxDate;
+        this.maxAmount = maxAmount;
+        this.baseCurrency = baseCurrency;
+        this.ratesFingerprint = ratesFingerprint;
+        this.firstMonth = firstMonth;
+        this.categories = categories;
+        this.currencies = currencies;
+        this.monthCategoryTotals = monthCategoryTotals;
+        this.idFilter = idFilter;
+        this.summaryOffset = summaryOffset;
+        this.headerLength = headerLength;
+    }
+
+    /**
+     * Writes {@code rows} to {@code file}. Rows whose base amount is NaN (no exchange
+     * rate) are stored but left out of the header totals and the summary block.
+     * {@code ratesFingerprint} identifies the rates the base amounts were converted with.
+     */
+    static ArchiveSegment write(File file, List<Expense> rows, String baseCurrency, long ratesFingerprint,
+                                ToDoubleFunction<Expense> toBase) throws IOException {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Cannot archive an empty segment");
+        }
+
+        List<Expense> sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparing(Expense::getDate));
+        int count = sorted.size();
+        LocalDate minDate = sorted.get(0).getDate();
+        LocalDate maxDate = sorted.get(count - 1).getDate();
+        YearMonth firstMonth = YearMonth.from(minDate);
+        int monthCount = monthIndex(firstMonth, YearMonth.from(maxDate)) + 1;
+
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        Map<String, Integer> currencies = new LinkedHashMap<>();
+        for (Expense expense : sorted) {
+            dictionary.putIfAbsent(expense.getCategory(), dictionary.size());
+            currencies.putIfAbsent(currencyCode(expense, baseCurrency), currencies.size());
+        }
+        long[][] totals = new long[monthCount][dictionary.size()];
+        QuantileSketch[][] sketches = new QuantileSketch[monthCount][dictionary.size()];
+        long[][][] histograms = new long[monthCount][dictionary.size()][];
+        List<Map<Long, Long>> dailyTotals = new ArrayList<>();
+        for (int i = 0; i < dictionary.size(); i++) {
+            dailyTotals.add(new LinkedHashMap<>());
+        }
+        long minAmount = Long.MAX_VALUE;
+        long maxAmount = Long.MIN_VALUE;
+
+        ByteArrayOutputStream dates = new ByteArrayOutputStream();
+        ByteArrayOutputStream amounts = new ByteArrayOutputStream();
+        ByteArrayOutputStream categoryCodes = new ByteArrayOutputStream();
+        ByteArrayOutputStream currencyCodes = new ByteArrayOutputStream();
+        long previousDay = minDate.toEpochDay();
+        for (Expense expense : sorted) {
+            long day = expense.getDate().toEpochDay();
+            writeVarLong(dates, day - previousDay);
+            previousDay = day;
+
+            long cents = toCents(expense.getAmount());
+            writeVarLong(amounts, (cents << 1) ^ (cents >> 63));
+            int code = dictionary.get(expense.getCategory());
+            writeVarLong(categoryCodes, code);
+            writeVarLong(currencyCodes, currencies.get(currencyCode(expense, baseCurrency)));
+
+            double baseAmount = toBase.applyAsDouble(expense);
+            if (Double.isNaN(baseAmount)) continue;
+            long baseCents = toCents(baseAmount);
+            minAmount = Math.min(minAmount, baseCents);
+            maxAmount = Math.max(maxAmount, baseCents);
+            int month = monthIndex(firstMonth, YearMonth.from(expense.getDate()));
+            totals[month][code] += baseCents;
+            if (sketches[month][code] == null) {
+                sketches[month][code] = new QuantileSketch();
+                histograms[month][code] = new long[ExpenseStats.HISTOGRAM_BOUNDS.length];
+            }
+            sketches[month][code].add(baseAmount);
+            histograms[month][code][ExpenseStats.histogramSlot(baseAmount)]++;
+            dailyTotals.get(code).merge(day, baseCents, Long::sum);
+        }
+        byte[] summary = writeSummary(minDate.toEpochDay(), sketches, histograms, dailyTotals);
+        long[] idFilter = new long[Math.max(1, (count * BLOOM_BITS_PER_ID + 63) / 64)];
+        for (Expense expense : sorted) {
+            addToFilter(idFilter, expense.getId());
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeLong(minDate.toEpochDay());
+            out.writeLong(maxDate.toEpochDay());
+            out.writeLong(minAmount);
+            out.writeLong(maxAmount);
+            out.writeUTF(baseCurrency);
+            out.writeLong(ratesFingerprint);
+            out.writeInt(dictionary.size());
+            for (String category : dictionary.keySet()) {
+                out.writeUTF(category);
+            }
+            out.writeInt(currencies.size());
+            for (String currency : currencies.keySet()) {
+                out.writeUTF(currency);
+            }
+            out.writeInt(monthCount);
+            for (long[] month : totals) {
+                for (long total : month) {
+                    out.writeLong(total);
+                }
+            }
+            out.writeInt(idFilter.length);
+            for (long word : idFilter) {
+                out.writeLong(word);
+            }
+            writeBlock(out, summary);
+
+            writeBlock(out, dates.toByteArray());
+            writeBlock(out, amounts.toByteArray());
+            writeBlock(out, categoryCodes.toByteArray());
+            writeBlock(out, currencyCodes.toByteArray());
+            writeTextColumn(out, sorted, true);
+            writeTextColumn(out, sorted, false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return open(file);
+    }
+
+    static ArchiveSegment open(File file) throws IOException {
+        try (CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+             DataInputStream in = new DataInputStream(counter)) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Not an archive segment: " + file);
+            }
+            int count = in.readInt();
+            LocalDate minDate = LocalDate.ofEpochDay(in.readLong());
+            LocalDate maxDate = LocalDate.ofEpochDay(in.readLong());
+            in.readLong(); // min amount, kept in the format but not needed
+            long maxAmount = in.readLong();
+            // Version 1 segments predate currencies and are taken to be in the current base
+            String baseCurrency = version >= 2 ? in.readUTF() : null;
+            long ratesFingerprint = version >= 5 ? in.readLong() : 0;
+            String[] categories = new String[in.readInt()];
+            for (int i = 0; i < categories.length; i++) {
+                categories[i] = in.readUTF();
+            }
+            String[] currencies = new String[version >= 2 ? in.readInt() : 0];
+            for (int i = 0; i < currencies.length; i++) {
+                currencies[i] = in.readUTF();
+            }
+            long[][] totals = new long[in.readInt()][categories.length];
+            for (long[] month : totals) {
+                for (int i = 0; i < month.length; i++) {
+                    month[i] = in.readLong();
+                }
+            }
+            // Segments before version 4 have no id filter; every id lookup decodes them
+            long[] idFilter = version >= 4 ? new long[in.readInt()] : null;
+            if (idFilter != null) {
+                for (int i = 0; i < idFilter.length; i++) {
+                    idFilter[i] = in.readLong();
+                }
+            }
+            long summaryOffset = counter.position;
+            if (version >= 3) {
+                skipFully(in, in.readInt(), file);
+            }
+            return new ArchiveSegment(file, version, count, minDate, maxDate, maxAmount, baseCurrency,
+                    ratesFingerprint, YearMonth.from(minDate), categories, currencies, totals, idFilter, summaryOffset, counter.position);
+        }
+    }
+
+    /**
+     * Adds this segment's per-month sketches, histograms and daily totals to the
+     * ledger's stats and trends without decoding its rows.
+     */
+    void addSummaryTo(ExpenseStats stats, SpendTrend trend) throws IOException {
+        if (!hasSummary()) {
+            throw new IOException("Archive segment predates summaries: " + file);
+        }
+        byte[] summary;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            skipFully(in, summaryOffset, file);
+            summary = readBlock(in);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(summary));
+        int buckets = in.readInt();
+        for (int i = 0; i < buckets; i++) {
+            YearMonth month = firstMonth.plusMonths(in.readInt());
+            String category = categories[in.readInt()];
+            long[] histogram = new long[in.readInt()];
+            for (int slot = 0; slot < histogram.length; slot++) {
+                histogram[slot] = in.readLong();
+            }
+            stats.addArchived(month, category, QuantileSketch.readFrom(in), histogram);
+        }
+        for (String category : categories) {
+            int days = in.readInt();
+            long day = minDate.toEpochDay();
+            for (int i = 0; i < days; i++) {
+                day += in.readInt();
+                trend.add(LocalDate.ofEpochDay(day), category, in.readLong() / 100.0);
+            }
+        }
+    }
+
+    /** Segments written before version 3 must be rewritten before their summary can be used. */
+    boolean hasSummary() {
+        return version >= 3;
+    }
+
+    /** False for segments in an older format, which the ledger rewrites on open. */
+    boolean isCurrentFormat() {
+        return version == VERSION;
+    }
+
+    /** Fresh Expense objects for every row; callers may change them without affecting the segment. */
+    List<Expense> readExpenses() throws IOException {
+        Columns columns = columns();
+        List<Expense> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(columns.expense(i));
+        }
+        return rows;
+    }
+
+    /** Rows whose description or category contains {@code lowerKeyword}, which must be lower case. */
+    List<Expense> searchExpenses(String lowerKeyword) throws IOException {
+        Columns columns = columns();
+        boolean[] categoryMatches = new boolean[categories.length];
+        for (int code = 0; code < categories.length; code++) {
+            categoryMatches[code] = categories[code].toLowerCase().contains(lowerKeyword);
+        }
+        List<Expense> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (categoryMatches[columns.categoryCodes[i]]
+                    || columns.descriptions[i].toLowerCase().contains(lowerKeyword)) {
+                rows.add(columns.expense(i));
+            }
+        }
+        return rows;
+    }
+
+    boolean containsId(String id) throws IOException {
+        if (idFilter != null && !mightContain(idFilter, id)) return false;
+        for (String archivedId : columns().ids) {
+            if (archivedId.equals(id)) return true;
+        }
+        return false;
+    }
+
+    private synchronized Columns columns() throws IOException {
+        Columns columns = cachedColumns.get();
+        if (columns == null) {
+            columns = decodeColumns();
+            cachedColumns = new SoftReference<>(columns);
+        }
+        return columns;
+    }
+
+    private Columns decodeColumns() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            skipFully(in, headerLength, file);
+            byte[] dates = readBlock(in);
+            byte[] amounts = readBlock(in);
+            byte[] categoryCodes = readBlock(in);
+            byte[] currencyCodes = version >= 2 ? readBlock(in) : null;
+            Columns columns = new Columns(count);
+            columns.ids = readTextColumn(in);
+            columns.descriptions = readTextColumn(in);
+
+            int[] datePos = {0}, amountPos = {0}, categoryPos = {0}, currencyPos = {0};
+            long day = minDate.toEpochDay();
+            for (int i = 0; i < count; i++) {
+                day += readVarLong(dates, datePos);
+                columns.days[i] = day;
+                long zigzag = readVarLong(amounts, amountPos);
+                columns.cents[i] = (zigzag >>> 1) ^ -(zigzag & 1);
+                columns.categoryCodes[i] = (int) readVarLong(categoryCodes, categoryPos);
+                columns.currencyCodes[i] = currencyCodes == null ? -1 : (int) readVarLong(currencyCodes, currencyPos);
+            }
+            return columns;
+        }
+    }
+
+    /** Rough heap footprint of the header, plus the decoded rows while they are cached. */
+    long estimatedBytes() {
+        long bytes = 256 + monthCategoryTotals.length * (categories.length * 8L + 16);
+        if (idFilter != null) {
+            bytes += idFilter.length * 8L;
+        }
+        for (String name : categories) {
+            bytes += 48 + name.length() * 2L;
+        }
+        bytes += currencies.length * 56L;
+        if (cachedColumns.get() != null) {
+            // Four primitive columns plus an id and a description string per row
+            bytes += count * (24L + 2 * 64);
+        }
+        return bytes;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long getRatesFingerprint() {
+        return ratesFingerprint;
+    }
+
+    /** Currencies the rows are in; empty for segments written before currencies. */
+    List<String> getCurrencies() {
+        return Arrays.asList(currencies);
+    }
+
+    /** Currency the header totals are in, or null for segments written before currencies. */
+    String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    double getMaxAmount() {
+        return maxAmount / 100.0;
+    }
+
+    boolean overlaps(LocalDate startDate, LocalDate endDate) {
+        return !maxDate.isBefore(startDate) && !minDate.isAfter(endDate);
+    }
+
+    boolean containsCategory(String category) {
+        return Arrays.asList(categories).contains(category);
+    }
+
+    double getTotal() {
+        long total = 0;
+        for (long[] month : monthCategoryTotals) {
+            for (long value : month) {
+                total += value;
+            }
+        }
+        return total / 100.0;
+    }
+
+    double getCategoryTotal(String category) {
+        int code = Arrays.asList(categories).indexOf(category);
+        if (code < 0) return 0;
+        long total = 0;
+        for (long[] month : monthCategoryTotals) {
+            total += month[code];
+        }
+        return total / 100.0;
+    }
+
+    void addCategoryTotals(Map<String, Double> summary) {
+        for (int code = 0; code < categories.length; code++) {
+            long total = 0;
+            for (long[] month : monthCategoryTotals) {
+                total += month[code];
+            }
+            summary.merge(categories[code], total / 100.0, Double::sum);
+        }
+    }
+
+    void addMonthCategoryTotals(YearMonth month, Map<String, Double> summary) {
+        int index = monthIndex(firstMonth, month);
+        if (index < 0 || index >= monthCategoryTotals.length) return;
+        for (int code = 0; code < categories.length; code++) {
+            if (monthCategoryTotals[index][code] != 0) {
+                summary.merge(categories[code], monthCategoryTotals[index][code] / 100.0, Double::sum);
+            }
+        }
+    }
+
+    double getMonthTotal(YearMonth month) {
+        int index = monthIndex(firstMonth, month);
+        if (index < 0 || index >= monthCategoryTotals.length) return 0;
+        long total = 0;
+        for (long value : monthCategoryTotals[index]) {
+            total += value;
+        }
+        return total / 100.0;
+    }
+
+    private static void addToFilter(long[] filter, String id) {
+        long bits = filter.length * 64L;
+        int h1 = id.hashCode();
+        int h2 = secondHash(id);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            filter[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static boolean mightContain(long[] filter, String id) {
+        long bits = filter.length * 64L;
+        int h1 = id.hashCode();
+        int h2 = secondHash(id);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private static int secondHash(String id) {
+        // FNV-1a, independent of String.hashCode(); forced odd so the probes never repeat
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < id.length(); i++) {
+            hash = (hash ^ id.charAt(i)) * 0x01000193;
+        }
+        return hash | 1;
+    }
+
+    private static int monthIndex(YearMonth first, YearMonth month) {
+        return (month.getYear() - first.getYear()) * 12 + month.getMonthValue() - first.getMonthValue();
+    }
+
+    private static String currencyCode(Expense expense, String baseCurrency) {
+        return expense.getCurrency() == null ? baseCurrency : expense.getCurrency();
+    }
+
+    private static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    private static byte[] writeSummary(long firstDay, QuantileSketch[][] sketches, long[][][] histograms,
+                                       List<Map<Long, Long>> dailyTotals) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        int buckets = 0;
+        for (QuantileSketch[] month : sketches) {
+            for (QuantileSketch sketch : month) {
+                if (sketch != null) buckets++;
+            }
+        }
+        out.writeInt(buckets);
+        for (int month = 0; month < sketches.length; month++) {
+            for (int code = 0; code < sketches[month].length; code++) {
+                if (sketches[month][code] == null) continue;
+                out.writeInt(month);
+                out.writeInt(code);
+                out.writeInt(histograms[month][code].length);
+                for (long value : histograms[month][code]) {
+                    out.writeLong(value);
+                }
+                sketches[month][code].writeTo(out);
+            }
+        }
+        // Days are delta-coded from the first day; rows were sorted, so each map is in date order
+        for (Map<Long, Long> days : dailyTotals) {
+            out.writeInt(days.size());
+            long previousDay = firstDay;
+            for (Map.Entry<Long, Long> entry : days.entrySet()) {
+                out.writeInt((int) (entry.getKey() - previousDay));
+                out.writeLong(entry.getValue());
+                previousDay = entry.getKey();
+            }
+        }
+        out.flush();
+        return raw.toByteArray();
+    }
+
+    private static void writeTextColumn(DataOutputStream out, List<Expense> rows, boolean ids) throws IOException {
+        int blocks = (rows.size() + TEXT_BLOCK_ROWS - 1) / TEXT_BLOCK_ROWS;
+        out.writeInt(blocks);
+        for (int start = 0; start < rows.size(); start += TEXT_BLOCK_ROWS) {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream();
+            DataOutputStream text = new DataOutputStream(raw);
+            int end = Math.min(rows.size(), start + TEXT_BLOCK_ROWS);
+            text.writeInt(end - start);
+            for (int i = start; i < end; i++) {
+                Expense expense = rows.get(i);
+                byte[] value = (ids ? expense.getId() : expense.getDescription()).getBytes(StandardCharsets.UTF_8);
+                text.writeInt(value.length);
+                text.write(value);
+            }
+            text.flush();
+
+            byte[] uncompressed = raw.toByteArray();
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            deflater.setInput(uncompressed);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            deflater.end();
+
+            out.writeInt(uncompressed.length);
+            writeBlock(out, compressed.toByteArray());
+        }
+    }
+
+    private static String[] readTextColumn(DataInputStream in) throws IOException {
+        List<String> values = new ArrayList<>();
+        int blocks = in.readInt();
+        for (int block = 0; block < blocks; block++) {
+            byte[] uncompressed = new byte[in.readInt()];
+            Inflater inflater = new Inflater();
+            inflater.setInput(readBlock(in));
+            try {
+                int offset = 0;
+                while (offset < uncompressed.length && !inflater.finished()) {
+                    offset += inflater.inflate(uncompressed, offset, uncompressed.length - offset);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt archive text block: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+
+            DataInputStream text = new DataInputStream(new ByteArrayInputStream(uncompressed));
+            int rows = text.readInt();
+            for (int i = 0; i < rows; i++) {
+                byte[] value = new byte[text.readInt()];
+                text.readFully(value);
+                values.add(new String(value, StandardCharsets.UTF_8));
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] block) throws IOException {
+        out.writeInt(block.length);
+        out.write(block);
+    }
+
+    private static void skipFully(InputStream in, long bytes, File file) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) throw new EOFException("Truncated archive segment: " + file);
+            remaining -= skipped;
+        }
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        byte[] block = new byte[in.readInt()];
+        in.readFully(block);
+        return block;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] data, int[] position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /** Decoded rows of a segment, one array per column. */
+    private class Columns {
+        final long[] days;
+        final long[] cents;
+        final int[] categoryCodes;
+        final int[] currencyCodes;
+        String[] ids;
+        String[] descriptions;
+
+        Columns(int count) {
+            days = new long[count];
+            cents = new long[count];
+            categoryCodes = new int[count];
+            currencyCodes = new int[count];
+        }
+
+        Expense expense(int row) {
+            String currency = currencyCodes[row] < 0 ? null : currencies[currencyCodes[row]];
+            return new Expense(ids[row], LocalDate.ofEpochDay(days[row]), categories[categoryCodes[row]],
+                    cents[row] / 100.0, currency, descriptions[row]);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long position;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) position++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) position += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package controller;
+
+import model.Currencies;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Daily exchange rates loaded from a CSV of "Date,Currency,Rate" rows, where Rate is
+ * the value of one unit of Currency in a common pivot currency; the pivot itself is
+ * listed with Rate 1. A currency converts to the base only if both are in the file
+ * (or it is the base); other amounts convert to 0 and the ledger reports them as
+ * unconvertible instead of summing them at par. Rates are forward-filled into one
+ * array per currency, covering at most the last 20 years of the file, and a
+ * factor-to-base table is precomputed whenever the base changes, so a conversion is
+ * one array read and a multiply. Factor arrays are indexed by the expense's currency
+ * index (see Currencies), so no code is looked up per conversion.
+ */
+class ExchangeRateTable {
+    private static final double[] IDENTITY = {1};
+    private static final double[] UNCONVERTIBLE = {0};
+    // Rows further than this from the file's median date are taken to be typos, e.g. 0001-01-01
+    private static final long MAX_DAYS_FROM_MEDIAN = 50 * 366;
+    // Daily arrays cover at most this many days up to the latest rate; older dates use the first day's rate
+    private static final int MAX_DENSE_DAYS = 20 * 366;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private long fingerprint;
+    private long firstDay;
+    private double[][] pivotRates = new double[0][];
+    private double[][] toBase = new double[0][];
+    private double[][] factorsByCurrency = new double[0][];
+    private String baseCurrency;
+
+    static ExchangeRateTable load(File file) {
+        ExchangeRateTable table = new ExchangeRateTable();
+        if (!file.exists()) {
+            return table;
+        }
+
+        Map<String, TreeMap<Long, Double>> rates = new HashMap<>();
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            table.fingerprint = crc.getValue();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content)));
+            String line = reader.readLine(); // skip header
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 3) {
+                    long day = LocalDate.parse(parts[0].trim()).toEpochDay();
+                    String currency = parts[1].trim().toUpperCase();
+                    rates.computeIfAbsent(currency, c -> new TreeMap<>()).put(day, Double.parseDouble(parts[2].trim()));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading exchange rates: " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Error parsing exchange rates: " + e.getMessage());
+        }
+        dropOutliers(rates);
+        if (rates.isEmpty()) {
+            return table;
+        }
+
+        long first = Long.MAX_VALUE, last = Long.MIN_VALUE;
+        for (TreeMap<Long, Double> series : rates.values()) {
+            first = Math.min(first, series.firstKey());
+            last = Math.max(last, series.lastKey());
+        }
+        if (last - first >= MAX_DENSE_DAYS) {
+            first = last - MAX_DENSE_DAYS + 1;
+            System.err.println("Exchange rates before " + LocalDate.ofEpochDay(first)
+                    + " are not kept day by day; earlier dates use the rate of that day");
+        }
+        int days = (int) (last - first + 1);
+        table.firstDay = first;
+        table.pivotRates = new double[rates.size()][];
+        for (Map.Entry<String, TreeMap<Long, Double>> entry : rates.entrySet()) {
+            TreeMap<Long, Double> series = entry.getValue();
+            double[] filled = new double[days];
+            Map.Entry<Long, Double> start = series.floorEntry(first);
+            double current = (start != null ? start : series.firstEntry()).getValue();
+            for (int i = 0; i < days; i++) {
+                Double rate = series.get(first + i);
+                if (rate != null) current = rate;
+                filled[i] = current;
+            }
+            int slot = table.slots.size();
+            table.slots.put(entry.getKey(), slot);
+            table.pivotRates[slot] = filled;
+        }
+        return table;
+    }
+
+    private static void dropOutliers(Map<String, TreeMap<Long, Double>> rates) {
+        List<Long> days = new ArrayList<>();
+        for (TreeMap<Long, Double> series : rates.values()) {
+            days.addAll(series.keySet());
+        }
+        if (days.isEmpty()) return;
+        Collections.sort(days);
+        long median = days.get(days.size() / 2);
+
+        int dropped = 0;
+        for (Iterator<TreeMap<Long, Double>> it = rates.values().iterator(); it.hasNext(); ) {
+            TreeMap<Long, Double> series = it.next();
+            int before = series.size();
+            series.headMap(median - MAX_DAYS_FROM_MEDIAN, false).clear();
+            series.tailMap(median + MAX_DAYS_FROM_MEDIAN, false).clear();
+            dropped += before - series.size();
+            if (series.isEmpty()) it.remove();
+        }
+        if (dropped > 0) {
+            System.err.println("Ignored " + dropped + " exchange rate row(s) dated more than 50 years from the rest");
+        }
+    }
+
+    /** CRC32 of rates.csv, or 0 without one; archive segments record it to notice rate edits. */
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    /** Rough heap footprint of the daily rate and factor arrays. */
+    long estimatedBytes() {
+        long bytes = factorsByCurrency.length * 8L;
+        for (double[] rates : pivotRates) {
+            bytes += rates.length * 8L + 16;
+        }
+        for (double[] factors : toBase) {
+            if (factors != null) bytes += factors.length * 8L + 16;
+        }
+        return bytes;
+    }
+
+    void setBaseCurrency(String baseCurrency) {
+        this.baseCurrency = baseCurrency;
+        this.factorsByCurrency = new double[0][];
+
+        Integer baseSlot = slots.get(baseCurrency);
+        toBase = new double[pivotRates.length][];
+        if (baseSlot == null) return;
+        int days = pivotRates[baseSlot].length;
+        double[] pivotToBase = new double[days];
+        for (int i = 0; i < days; i++) {
+            pivotToBase[i] = 1 / pivotRates[baseSlot][i];
+        }
+        for (int slot = 0; slot < pivotRates.length; slot++) {
+            toBase[slot] = new double[days];
+            for (int i = 0; i < days; i++) {
+                toBase[slot][i] = pivotRates[slot][i] * pivotToBase[i];
+            }
+        }
+    }
+
+    /** True if amounts in {@code currency} can be converted to {@code base} with this table. */
+    boolean canConvert(String currency, String base) {
+        return currency.equals(base) || (slots.containsKey(currency) && slots.containsKey(base));
+    }
+
+    /** Same as canConvert(String, String) against the current base; -1 means the base. */
+    boolean canConvert(int currencyIndex) {
+        return currencyIndex < 0 || factors(currencyIndex) != UNCONVERTIBLE;
+    }
+
+    /**
+     * Converts an amount in the currency with index {@code currencyIndex}; -1 means the base.
+     * Unconvertible amounts come back as 0, see canConvert.
+     */
+    double toBase(double amount, int currencyIndex, LocalDate date) {
+        if (currencyIndex < 0) return amount;
+
+        double[] factors = factors(currencyIndex);
+        long index = date.toEpochDay() - firstDay;
+        int clamped = (int) Math.max(0, Math.min(factors.length - 1, index));
+        return amount * factors[clamped];
+    }
+
+    private double[] factors(int currencyIndex) {
+        double[] factors = currencyIndex < factorsByCurrency.length ? factorsByCurrency[currencyIndex] : null;
+        return factors != null ? factors : resolve(currencyIndex);
+    }
+
+    private double[] resolve(int currencyIndex) {
+        if (currencyIndex >= factorsByCurrency.length) {
+            factorsByCurrency = Arrays.copyOf(factorsByCurrency, Math.max(currencyIndex + 1, Currencies.count()));
+        }
+        String currency = Currencies.codeAt(currencyIndex);
+        double[] factors;
+        if (currency.equals(baseCurrency)) {
+            factors = IDENTITY;
+        } else if (canConvert(currency, baseCurrency)) {
+            factors = toBase[slots.get(currency)];
+        } else {
+            factors = UNCONVERTIBLE;
+        }
+        factorsByCurrency[currencyIndex] = factors;
+        return factors;
+    }
+}
@@ -1,169 +1,805 @@
 package controller;
 
+import model.Currencies;
 import model.Expense;
 import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class ExpenseController {
     private List<Expense> expenses;
+    private Map<YearMonth, List<Expense>> expensesByMonth;
     private Map<String, Double> categoryBudgets;
-    private static final String DATA_FILE = "data/expenses.csv";
-    private static final String BUDGET_FILE = "data/budgets.csv";
+    private ExpenseStats stats;
+    private SpendTrend trend;
+    private List<ArchiveSegment> archiveSegments;
+    private int archiveAgeYears;
+    private String baseCurrency = DEFAULT_BASE_CURRENCY;
+    private ExchangeRateTable rates;
+    private final File dataFile;
+    private final File budgetFile;
+    private final File settingsFile;
+    private final File ratesFile;
+    private final File archiveDir;
+    private final File pendingArchiveFile;
+    private final Executor ioExecutor;
+    private final Clock clock;
+    private final Object fileLock = new Object();
+    private boolean savePending;
+    private long saveVersion;
+    private long writtenVersion;
+    private int writesInFlight;
+    private boolean closed;
+    private static final String DEFAULT_LEDGER_DIR = "data";
+    private static final long ESTIMATED_BYTES_PER_EXPENSE = 240;
+    private static final String DEFAULT_BASE_CURRENCY = "INR";
 
     public ExpenseController() {
+        this(new File(DEFAULT_LEDGER_DIR), Runnable::run);
+    }
+
+    /**
+     * Opens the ledger stored in {@code ledgerDir}. Saves of the expense list are
+     * coalesced and run on {@code ioExecutor}; pass {@code Runnable::run} to save inline.
+     * Old years are only archived on open if the ledger's settings set ArchiveAgeYears.
+     */
+    public ExpenseController(File ledgerDir, Executor ioExecutor) {
+        this(ledgerDir, ioExecutor, Clock.systemDefaultZone());
+    }
+
+    /**
+     * Same as above, with {@code clock} deciding what "today" is for rolling windows,
+     * month-end projections and age-based archiving; tools pass a fixed clock so
+     * results do not depend on the day they run.
+     */
+    public ExpenseController(File ledgerDir, Executor ioExecutor, Clock clock) {
+        ledgerDir.mkdirs();
+        this.dataFile = new File(ledgerDir, "expenses.csv");
+        this.budgetFile = new File(ledgerDir, "budgets.csv");
+        this.settingsFile = new File(ledgerDir, "settings.csv");
+        this.ratesFile = new File(ledgerDir, "rates.csv");
+        this.archiveDir = new File(ledgerDir, "archive");
+        this.pendingArchiveFile = new File(archiveDir, "pending-archive.txt");
+        this.ioExecutor = ioExecutor;
+        this.clock = clock;
         this.expenses = new ArrayList<>();
+        this.expensesByMonth = new HashMap<>();
         this.categoryBudgets = new HashMap<>();
+        this.stats = new ExpenseStats();
+        this.trend = new SpendTrend(clock);
+        this.archiveSegments = new ArrayList<>();
+        loadSettings();
+        this.rates = ExchangeRateTable.load(ratesFile);
+        rates.setBaseCurrency(baseCurrency);
         loadExpenses();
+        loadArchive();
+        recoverPendingArchive();
+        rebaseArchive();
+        indexArchive();
         loadBudgets();
+        if (archiveAgeYears > 0) {
+            archiveOldExpenses();
+        }
     }
 
-    public void addExpense(Expense expense) {
+    public synchronized void addExpense(Expense expense) {
+        ensureOpen();
+        if (expense.getCurrency() == null) {
+            expense.setCurrency(baseCurrency);
+        }
+        checkCurrency(expense.getCurrency());
+        checkConvertible(expense.getCurrency());
         expenses.add(expense);
+        indexExpense(expense);
         saveExpenses();
     }
 
-    public void updateExpense(String id, LocalDate date, String category, double amount, String description) {
+    /** Adds many expenses with a single save, e.g. when importing or generating a ledger. */
+    public synchronized void addExpenses(List<Expense> batch) {
+        ensureOpen();
+        // Validate the whole batch first so a bad row does not leave it half added
+        for (Expense expense : batch) {
+            if (expense.getCurrency() != null) {
+                checkCurrency(expense.getCurrency());
+                checkConvertible(expense.getCurrency());
+            }
+        }
+        for (Expense expense : batch) {
+            if (expense.getCurrency() == null) {
+                expense.setCurrency(baseCurrency);
+            }
+            expenses.add(expense);
+            indexExpense(expense);
+        }
+        saveExpenses();
+    }
+
+    public synchronized void updateExpense(String id, LocalDate date, String category, double amount, String description) {
+        updateExpense(id, date, category, amount, null, description);
+    }
+
+    /** Updates an expense; a null currency keeps the expense's current one. */
+    public synchronized void updateExpense(String id, LocalDate date, String category, double amount, String currency,
+                              String description) {
+        ensureOpen();
+        if (currency != null) {
+            currency = currency.trim().toUpperCase();
+            checkCurrency(currency);
+            checkConvertible(currency);
+        }
         for (Expense expense : expenses) {
             if (expense.getId().equals(id)) {
+                unindexExpense(expense);
                 expense.setDate(date);
                 expense.setCategory(category);
                 expense.setAmount(amount);
+                if (currency != null) {
+                    expense.setCurrency(currency);
+                }
                 expense.setDescription(description);
+                indexExpense(expense);
                 saveExpenses();
                 return;
             }
         }
+        rejectIfArchived(id);
     }
 
-    public void deleteExpense(String id) {
-        expenses.removeIf(expense -> expense.getId().equals(id));
+    public synchronized void deleteExpense(String id) {
+        ensureOpen();
+        boolean removed = expenses.removeIf(expense -> {
+            if (!expense.getId().equals(id)) return false;
+            unindexExpense(expense);
+            return true;
+        });
+        if (!removed) {
+            rejectIfArchived(id);
+            return;
+        }
         saveExpenses();
     }
 
-    public List<Expense> getAllExpenses() {
+    public synchronized List<Expense> getAllExpenses() {
         return new ArrayList<>(expenses);
     }
 
-    public List<Expense> getExpensesByCategory(String category) {
-        return expenses.stream()
+    public synchronized List<Expense> getExpensesByCategory(String category) {
+        List<Expense> result = expenses.stream()
                 .filter(e -> e.getCategory().equals(category))
                 .collect(Collectors.toList());
+        for (Expense expense : readArchived(segment -> segment.containsCategory(category))) {
+            if (expense.getCategory().equals(category)) result.add(expense);
+        }
+        return result;
     }
 
-    public List<Expense> getExpensesByDateRange(LocalDate startDate, LocalDate endDate) {
-        return expenses.stream()
+    public synchronized List<Expense> getExpensesByDateRange(LocalDate startDate, LocalDate endDate) {
+        List<Expense> result = expenses.stream()
                 .filter(e -> !e.getDate().isBefore(startDate) && !e.getDate().isAfter(endDate))
                 .collect(Collectors.toList());
+        for (Expense expense : readArchived(segment -> segment.overlaps(startDate, endDate))) {
+            if (!expense.getDate().isBefore(startDate) && !expense.getDate().isAfter(endDate)) result.add(expense);
+        }
+        return result;
     }
 
-    public List<Expense> searchExpenses(String keyword) {
+    public synchronized List<Expense> searchExpenses(String keyword) {
         String lowerKeyword = keyword.toLowerCase();
-        return expenses.stream()
+        List<Expense> result = expenses.stream()
                 .filter(e -> e.getDescription().toLowerCase().contains(lowerKeyword)
                         || e.getCategory().toLowerCase().contains(lowerKeyword))
                 .collect(Collectors.toList());
+        for (ArchiveSegment segment : archiveSegments) {
+            try {
+                result.addAll(withCurrency(segment.searchExpenses(lowerKeyword)));
+            } catch (IOException e) {
+                System.err.println("Error reading archive " + segment.getFile().getName() + ": " + e.getMessage());
+            }
+        }
+        return result;
     }
 
-    public Map<String, Double> getCategorySummary() {
+    public synchronized Map<String, Double> getCategorySummary() {
         Map<String, Double> summary = new HashMap<>();
         for (Expense expense : expenses) {
-            summary.merge(expense.getCategory(), expense.getAmount(), Double::sum);
+            summary.merge(expense.getCategory(), baseAmount(expense), Double::sum);
+        }
+        for (ArchiveSegment segment : archiveSegments) {
+            segment.addCategoryTotals(summary);
         }
         return summary;
     }
 
-    public double getTotalExpenses() {
-        return expenses.stream().mapToDouble(Expense::getAmount).sum();
+    public synchronized double getTotalExpenses() {
+        double total = expenses.stream().mapToDouble(this::baseAmount).sum();
+        for (ArchiveSegment segment : archiveSegments) {
+            total += segment.getTotal();
+        }
+        return total;
     }
 
-    public double getMonthlyTotal(int year, int month) {
-        return expenses.stream()
+    public synchronized double getMonthlyTotal(int year, int month) {
+        double total = expenses.stream()
                 .filter(e -> e.getDate().getYear() == year && e.getDate().getMonthValue() == month)
-                .mapToDouble(Expense::getAmount)
+                .mapToDouble(this::baseAmount)
                 .sum();
+        for (ArchiveSegment segment : archiveSegments) {
+            total += segment.getMonthTotal(YearMonth.of(year, month));
+        }
+        return total;
     }
 
-    public double getWeeklyTotal(LocalDate weekStart) {
+    public synchronized double getWeeklyTotal(LocalDate weekStart) {
         LocalDate weekEnd = weekStart.plusDays(6);
         return getExpensesByDateRange(weekStart, weekEnd).stream()
-                .mapToDouble(Expense::getAmount)
+                .mapToDouble(this::baseAmount)
                 .sum();
     }
 
-    public Map<String, Double> getMonthlyCategorySummary(int year, int month) {
+    public synchronized Map<String, Double> getMonthlyCategorySummary(int year, int month) {
         Map<String, Double> summary = new HashMap<>();
         expenses.stream()
                 .filter(e -> e.getDate().getYear() == year && e.getDate().getMonthValue() == month)
-                .forEach(e -> summary.merge(e.getCategory(), e.getAmount(), Double::sum));
+                .forEach(e -> summary.merge(e.getCategory(), baseAmount(e), Double::sum));
+        for (ArchiveSegment segment : archiveSegments) {
+            segment.addMonthCategoryTotals(YearMonth.of(year, month), summary);
+        }
         return summary;
     }
 
-    public void setBudget(String category, double budget) {
+    public synchronized List<Expense> getTopExpenses(LocalDate startDate, LocalDate endDate, int limit) {
+        if (limit <= 0) return new ArrayList<>();
+
+        // Min-heap of the current top entries, so the ledger is scanned once without sorting it
+        PriorityQueue<Expense> top = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(this::baseAmount));
+        for (Expense expense : expenses) {
+            offerTop(top, limit, expense, startDate, endDate);
+        }
+        for (ArchiveSegment segment : archiveSegments) {
+            // The segment header's max amount lets us skip segments that cannot beat the current heap
+            if (!segment.overlaps(startDate, endDate)
+                    || (top.size() == limit && segment.getMaxAmount() <= baseAmount(top.peek()))) continue;
+            for (Expense expense : readSegment(segment)) {
+                offerTop(top, limit, expense, startDate, endDate);
+            }
+        }
+
+        List<Expense> result = new ArrayList<>(top);
+        result.sort(Comparator.comparingDouble(this::baseAmount).reversed());
+        return result;
+    }
+
+    /**
+     * Approximate amount quantiles (0.5 = median, 0.95 = p95) over whole months.
+     * A null category covers every category.
+     */
+    public synchronized double[] getAmountQuantiles(String category, YearMonth from, YearMonth to, double... quantiles) {
+        refreshSketches();
+        return stats.mergeSketches(category, from, to).quantiles(quantiles);
+    }
+
+    public synchronized Map<String, Long> getAmountHistogram(String category, YearMonth from, YearMonth to) {
+        long[] counts = stats.mergeHistograms(category, from, to);
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            histogram.put(ExpenseStats.histogramLabel(i), counts[i]);
+        }
+        return histogram;
+    }
+
+    /** Total of the last {@code days} days up to today; a null category covers every category. */
+    public synchronized double getRollingTotal(String category, int days) {
+        checkWindow(days);
+        return trend.windowTotal(category, days);
+    }
+
+    public synchronized double getRollingAverage(String category, int days) {
+        checkWindow(days);
+        return trend.windowTotal(category, days) / days;
+    }
+
+    /** Trailing {@code days}-day totals for each day of the year, indexed by day-of-year - 1. */
+    public synchronized double[] getDailyRollingTotals(String category, int year, int days) {
+        checkWindow(days);
+        return trend.rollingTotals(category, year, days);
+    }
+
+    /** Relative change against the previous month, e.g. 0.25 for +25%; NaN when that month is empty. */
+    public synchronized double getMonthOverMonthChange(String category, YearMonth month) {
+        double previous = trend.monthTotal(category, month.minusMonths(1));
+        if (previous == 0) return Double.NaN;
+        return (trend.monthTotal(category, month) - previous) / previous;
+    }
+
+    /** Linear projection of this month's total from the spend so far. */
+    public synchronized double getProjectedMonthEnd(String category) {
+        LocalDate today = LocalDate.now(clock);
+        double monthToDate = trend.monthTotal(category, YearMonth.from(today));
+        return monthToDate / today.getDayOfMonth() * today.lengthOfMonth();
+    }
+
+    public synchronized int getArchiveAgeYears() {
+        return archiveAgeYears;
+    }
+
+    /** Saves the archive age in settings.csv, so later opens archive that far back; 0 turns it off. */
+    public synchronized void setArchiveAgeYears(int years) {
+        ensureOpen();
+        if (years < 0) {
+            throw new IllegalArgumentException("Archive age cannot be negative: " + years);
+        }
+        this.archiveAgeYears = years;
+        saveSettings();
+    }
+
+    /**
+     * Moves expenses from before the start of the year that is {@code archiveAgeYears}
+     * back into compressed archive segments, one per year. Archived expenses no longer
+     * appear in getAllExpenses() but still count in summaries, filters and searches,
+     * and they can no longer be updated or deleted.
+     */
+    public synchronized int archiveOldExpenses() {
+        if (archiveAgeYears <= 0) return 0;
+        return archiveExpensesBefore(LocalDate.now(clock).minusYears(archiveAgeYears).withDayOfYear(1));
+    }
+
+    public synchronized int archiveExpensesBefore(LocalDate cutoff) {
+        ensureOpen();
+        Map<Integer, List<Expense>> byYear = new TreeMap<>();
+        for (Expense expense : expenses) {
+            if (expense.getDate().isBefore(cutoff)) {
+                byYear.computeIfAbsent(expense.getDate().getYear(), y -> new ArrayList<>()).add(expense);
+            }
+        }
+        if (byYear.isEmpty()) return 0;
+
+        archiveDir.mkdirs();
+        long stamp = System.currentTimeMillis();
+        Map<Integer, File> files = new TreeMap<>();
+        for (Integer year : byYear.keySet()) {
+            files.put(year, new File(archiveDir, "segment-" + year + "-" + stamp + ".seg"));
+        }
+        // The marker names the segments whose rows may still be in expenses.csv; if we
+        // stop before the ledger is rewritten, the next open drops those rows again
+        if (!writePendingArchive(files.values())) return 0;
+
+        Set<Expense> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<ArchiveSegment> written = new ArrayList<>();
+        for (Map.Entry<Integer, List<Expense>> entry : byYear.entrySet()) {
+            try {
+                written.add(ArchiveSegment.write(files.get(entry.getKey()), entry.getValue(), baseCurrency,
+                        rates.getFingerprint(), this::archivedBaseAmount));
+                archived.addAll(entry.getValue());
+            } catch (IOException e) {
+                System.err.println("Error archiving expenses for " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+
+        // The rows now count through the segments' summaries instead of the live aggregates
+        for (Expense expense : archived) {
+            unindexAggregates(expense);
+        }
+        for (ArchiveSegment segment : written) {
+            archiveSegments.add(segment);
+            indexSegment(segment);
+        }
+        expenses.removeIf(archived::contains);
+        Set<YearMonth> months = new HashSet<>();
+        for (Expense expense : archived) {
+            months.add(YearMonth.from(expense.getDate()));
+        }
+        for (YearMonth month : months) {
+            List<Expense> rows = expensesByMonth.get(month);
+            if (rows != null && rows.removeIf(archived::contains) && rows.isEmpty()) {
+                expensesByMonth.remove(month);
+            }
+        }
+        // Written inline rather than queued, so the marker only goes once the rows are off the ledger
+        savePending = true;
+        if (flushNow()) {
+            pendingArchiveFile.delete();
+        }
+        return archived.size();
+    }
+
+    /**
+     * Writes any pending save, waits for saves already running on the I/O executor,
+     * and rejects further changes; used when a ledger is evicted. Once this returns
+     * the files on disk are final, so the ledger can safely be opened again.
+     */
+    public synchronized void close() {
+        closed = true;
+        flush();
+        while (writesInFlight > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Writes the expense list now if a save is still queued. */
+    public void flush() {
+        flushNow();
+    }
+
+    /** Like flush(), but reports whether the expense list on disk is now up to date. */
+    private boolean flushNow() {
+        List<Expense> snapshot;
+        long version;
+        synchronized (this) {
+            // Taking the snapshot with the flag cleared means close() either sees the
+            // save pending and writes it, or sees it in flight and waits for it
+            if (!savePending) return true;
+            savePending = false;
+            snapshot = snapshotExpenses();
+            version = ++saveVersion;
+            writesInFlight++;
+        }
+
+        try {
+            synchronized (fileLock) {
+                // A newer snapshot may already be on disk if two flushes raced
+                if (version < writtenVersion) return true;
+                if (!writeExpenses(snapshot)) return false;
+                writtenVersion = version;
+                return true;
+            }
+        } finally {
+            synchronized (this) {
+                writesInFlight--;
+                notifyAll();
+            }
+        }
+    }
+
+    /** Rough heap footprint of this ledger, used to enforce a memory budget across ledgers. */
+    public synchronized long estimatedMemoryBytes() {
+        long bytes = expenses.size() * ESTIMATED_BYTES_PER_EXPENSE + stats.estimatedBytes() + trend.estimatedBytes()
+                + rates.estimatedBytes();
+        // The month index holds a second reference to every live row, plus a list per month
+        bytes += expenses.size() * 8L + expensesByMonth.size() * 96L;
+        for (ArchiveSegment segment : archiveSegments) {
+            bytes += segment.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    public synchronized String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    /**
+     * Switches the currency summaries, budgets and archive totals are reported in.
+     * Archive segments are rewritten and all aggregates rebuilt in the new currency.
+     * Refused if rates.csv cannot convert some currency the ledger already holds.
+     */
+    public synchronized void setBaseCurrency(String currency) {
+        ensureOpen();
+        String code = currency.trim().toUpperCase();
+        checkCurrency(code);
+        Set<String> missing = new TreeSet<>();
+        for (String used : currenciesInUse()) {
+            if (!rates.canConvert(used, code)) missing.add(used);
+        }
+        if (!missing.isEmpty()) {
+            throw new IllegalArgumentException("No exchange rates in rates.csv to convert "
+                    + String.join(", ", missing) + " to " + code);
+        }
+        baseCurrency = code;
+        saveSettings();
+        rates.setBaseCurrency(baseCurrency);
+        rebaseArchive();
+
+        stats = new ExpenseStats();
+        trend = new SpendTrend(clock);
+        for (Expense expense : expenses) {
+            indexAggregates(expense);
+        }
+        indexArchive();
+    }
+
+    /**
+     * Currencies in the ledger that rates.csv cannot convert to the base currency,
+     * e.g. after the file was removed. Their amounts are left out of every total.
+     */
+    public synchronized Set<String> getUnconvertibleCurrencies() {
+        Set<String> missing = new TreeSet<>();
+        for (String currency : currenciesInUse()) {
+            if (!rates.canConvert(currency, baseCurrency)) missing.add(currency);
+        }
+        return missing;
+    }
+
+    public synchronized void setBudget(String category, double budget) {
+        ensureOpen();
         categoryBudgets.put(category, budget);
         saveBudgets();
     }
 
-    public Double getBudget(String category) {
+    public synchronized Double getBudget(String category) {
         return categoryBudgets.get(category);
     }
 
-    public Map<String, Double> getAllBudgets() {
+    public synchronized Map<String, Double> getAllBudgets() {
         return new HashMap<>(categoryBudgets);
     }
 
-    public boolean isBudgetExceeded(String category) {
+    public synchronized boolean isBudgetExceeded(String category) {
         Double budget = categoryBudgets.get(category);
         if (budget == null) return false;
 
-        double spent = expenses.stream()
-                .filter(e -> e.getCategory().equals(category))
-                .mapToDouble(Expense::getAmount)
-                .sum();
-
-        return spent > budget;
+        return getCategorySpent(category) > budget;
     }
 
-    public double getBudgetRemaining(String category) {
+    public synchronized double getBudgetRemaining(String category) {
         Double budget = categoryBudgets.get(category);
         if (budget == null) return 0;
 
+        return budget - getCategorySpent(category);
+    }
+
+    private double getCategorySpent(String category) {
         double spent = expenses.stream()
                 .filter(e -> e.getCategory().equals(category))
-                .mapToDouble(Expense::getAmount)
+                .mapToDouble(this::baseAmount)
                 .sum();
+        for (ArchiveSegment segment : archiveSegments) {
+            spent += segment.getCategoryTotal(category);
+        }
+        return spent;
+    }
+
+    private void offerTop(PriorityQueue<Expense> top, int limit, Expense expense,
+                                 LocalDate startDate, LocalDate endDate) {
+        if (expense.getDate().isBefore(startDate) || expense.getDate().isAfter(endDate)) return;
+        if (!isConvertible(expense)) return;
+        if (top.size() < limit) {
+            top.add(expense);
+        } else if (baseAmount(expense) > baseAmount(top.peek())) {
+            top.poll();
+            top.add(expense);
+        }
+    }
+
+    private void rejectIfArchived(String id) {
+        for (ArchiveSegment segment : archiveSegments) {
+            boolean archived;
+            try {
+                // The header's id filter rules out almost every segment without decoding it
+                archived = segment.containsId(id);
+            } catch (IOException e) {
+                System.err.println("Error reading archive " + segment.getFile().getName() + ": " + e.getMessage());
+                continue;
+            }
+            if (archived) {
+                throw new IllegalStateException("Expense " + id + " is archived and can no longer be changed");
+            }
+        }
+    }
+
+    private List<Expense> readArchived(Predicate<ArchiveSegment> filter) {
+        List<Expense> rows = new ArrayList<>();
+        for (ArchiveSegment segment : archiveSegments) {
+            if (filter.test(segment)) {
+                rows.addAll(readSegment(segment));
+            }
+        }
+        return rows;
+    }
+
+    private List<Expense> readSegment(ArchiveSegment segment) {
+        try {
+            return withCurrency(segment.readExpenses());
+        } catch (IOException e) {
+            System.err.println("Error reading archive " + segment.getFile().getName() + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private List<Expense> withCurrency(List<Expense> rows) {
+        // Version 1 segments predate currencies; their rows are in the base currency
+        for (Expense expense : rows) {
+            if (expense.getCurrency() == null) {
+                expense.setCurrency(baseCurrency);
+            }
+        }
+        return rows;
+    }
+
+    private double baseAmount(Expense expense) {
+        return rates.toBase(expense.getAmount(), expense.getCurrencyIndex(), expense.getDate());
+    }
+
+    private double archivedBaseAmount(Expense expense) {
+        // NaN tells the segment to keep the row out of its totals and summary
+        return isConvertible(expense) ? baseAmount(expense) : Double.NaN;
+    }
+
+    private boolean isConvertible(Expense expense) {
+        return rates.canConvert(expense.getCurrencyIndex());
+    }
+
+    private Set<String> currenciesInUse() {
+        Set<String> currencies = new HashSet<>();
+        for (Expense expense : expenses) {
+            currencies.add(expense.getCurrency());
+        }
+        for (ArchiveSegment segment : archiveSegments) {
+            currencies.addAll(segment.getCurrencies());
+        }
+        return currencies;
+    }
+
+    private void indexExpense(Expense expense) {
+        indexAggregates(expense);
+        expensesByMonth.computeIfAbsent(YearMonth.from(expense.getDate()), m -> new ArrayList<>()).add(expense);
+    }
+
+    private void unindexExpense(Expense expense) {
+        unindexAggregates(expense);
+        YearMonth month = YearMonth.from(expense.getDate());
+        List<Expense> rows = expensesByMonth.get(month);
+        if (rows != null && rows.remove(expense) && rows.isEmpty()) {
+            expensesByMonth.remove(month);
+        }
+    }
+
+    private void indexAggregates(Expense expense) {
+        // Amounts without an exchange rate are reported by getUnconvertibleCurrencies() instead
+        if (!isConvertible(expense)) return;
+        double amount = baseAmount(expense);
+        stats.add(expense.getDate(), expense.getCategory(), amount);
+        trend.add(expense.getDate(), expense.getCategory(), amount);
+    }
+
+    private void unindexAggregates(Expense expense) {
+        if (!isConvertible(expense)) return;
+        double amount = baseAmount(expense);
+        stats.remove(expense.getDate(), expense.getCategory(), amount);
+        trend.remove(expense.getDate(), expense.getCategory(), amount);
+    }
+
+    private void indexArchive() {
+        for (ArchiveSegment segment : archiveSegments) {
+            indexSegment(segment);
+        }
+    }
+
+    private void indexSegment(ArchiveSegment segment) {
+        try {
+            segment.addSummaryTo(stats, trend);
+        } catch (IOException e) {
+            System.err.println("Error reading archive summary " + segment.getFile().getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void refreshSketches() {
+        Map<YearMonth, Set<String>> dirty = stats.getDirtyBuckets();
+        if (dirty.isEmpty()) return;
+
+        // Only the stale (month, category) buckets are rebuilt, from that month's live rows;
+        // archived rows keep their own sketches from the segment summaries
+        for (Map.Entry<YearMonth, Set<String>> entry : dirty.entrySet()) {
+            for (String category : entry.getValue()) {
+                stats.resetSketch(entry.getKey(), category);
+            }
+            for (Expense expense : expensesByMonth.getOrDefault(entry.getKey(), Collections.emptyList())) {
+                if (entry.getValue().contains(expense.getCategory()) && isConvertible(expense)) {
+                    stats.addToSketch(expense.getDate(), expense.getCategory(), baseAmount(expense));
+                }
+            }
+        }
+    }
 
-        return budget - spent;
+    private void checkCurrency(String currency) {
+        if (!Currencies.isValid(currency)) {
+            throw new IllegalArgumentException("Invalid currency code: '" + currency + "' (expected three letters, e.g. INR)");
+        }
+    }
+
+    private void checkConvertible(String currency) {
+        if (!rates.canConvert(currency, baseCurrency)) {
+            throw new IllegalArgumentException("No exchange rate from " + currency + " to " + baseCurrency
+                    + "; add both currencies to rates.csv");
+        }
+    }
+
+    private void checkWindow(int days) {
+        if (days <= 0) {
+            throw new IllegalArgumentException("Rolling window must be at least one day: " + days);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Ledger has been closed: " + dataFile.getParentFile());
+        }
     }
 
     private void saveExpenses() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(DATA_FILE))) {
-            writer.println("ID,Date,Category,Amount,Description");
-            for (Expense expense : expenses) {
-                // ✅ Save plain numeric values (no ₹ symbol)
+        // Several changes before the executor gets to it are written once
+        if (savePending) return;
+        savePending = true;
+        try {
+            ioExecutor.execute(this::flush);
+        } catch (RuntimeException e) {
+            // The executor refused the save (e.g. it was shut down): write it here, so the
+            // change is kept and the flag is cleared for later saves, then let the caller know
+            flush();
+            throw e;
+        }
+    }
+
+    private List<Expense> snapshotExpenses() {
+        List<Expense> snapshot = new ArrayList<>(expenses.size());
+        for (Expense expense : expenses) {
+            snapshot.add(new Expense(expense.getId(), expense.getDate(), expense.getCategory(),
+                    expense.getAmount(), expense.getCurrency(), expense.getDescription()));
+        }
+        return snapshot;
+    }
+
+    private boolean writeExpenses(List<Expense> snapshot) {
+        // Written to a temp file and renamed, so a reader never sees a half-written ledger
+        File temp = new File(dataFile.getPath() + ".tmp");
+        try (PrintWriter writer = new PrintWriter(new FileWriter(temp))) {
+            writer.println("ID,Date,Category,Amount,Currency,Description");
+            for (Expense expense : snapshot) {
+                // ✅ Save plain numeric values, the currency goes in its own column
                 writer.println(expense.getId() + "," +
                         expense.getDate() + "," +
                         expense.getCategory() + "," +
                         expense.getAmount() + "," +
+                        expense.getCurrency() + "," +
                         expense.getDescription());
             }
+            if (writer.checkError()) {
+                throw new IOException("write to " + temp + " failed");
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving expenses: " + e.getMessage());
+            return false;
+        }
+        try {
+            try {
+                Files.move(temp.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
         } catch (IOException e) {
             System.err.println("Error saving expenses: " + e.getMessage());
+            return false;
         }
     }
 
     private void loadExpenses() {
-        File file = new File(DATA_FILE);
+        File file = dataFile;
         if (!file.exists()) {
             return;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(DATA_FILE))) {
-            String line = reader.readLine(); // skip header
+        try (BufferedReader reader = new BufferedReader(new FileReader(dataFile))) {
+            String header = reader.readLine();
+            // Files written before the Currency column have five fields
+            boolean hasCurrency = header != null && header.contains(",Currency,");
+            int fields = hasCurrency ? 6 : 5;
+            String line;
             while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(",", 5);
-                if (parts.length >= 5) {
+                String[] parts = line.split(",", fields);
+                if (parts.length >= fields) {
                     String id = parts[0];
                     LocalDate date = Expense.parseDate(parts[1]);
                     String category = parts[2];
@@ -172,8 +808,16 @@ public class ExpenseController {
                     String amountStr = parts[3].replaceAll("[^0-9.]", "");
                     double amount = Double.parseDouble(amountStr);
 
-                    String description = parts[4];
-                    expenses.add(new Expense(id, date, category, amount, description));
+                    String currency = hasCurrency ? parts[4].trim().toUpperCase() : currencyFromSymbol(parts[3]);
+                    if (!Currencies.isValid(currency)) {
+                        System.err.println("Invalid currency '" + currency + "' for expense " + id
+                                + "; using " + baseCurrency);
+                        currency = baseCurrency;
+                    }
+                    String description = parts[fields - 1];
+                    Expense expense = new Expense(id, date, category, amount, currency, description);
+                    expenses.add(expense);
+                    indexExpense(expense);
                 }
             }
         } catch (IOException e) {
@@ -183,8 +827,107 @@ public class ExpenseController {
         }
     }
 
+    private String currencyFromSymbol(String amount) {
+        if (amount.contains("₹")) return "INR";
+        if (amount.contains("$")) return "USD";
+        return baseCurrency;
+    }
+
+    private void rebaseArchive() {
+        for (int i = 0; i < archiveSegments.size(); i++) {
+            ArchiveSegment segment = archiveSegments.get(i);
+            if (!needsRewrite(segment)) continue;
+
+            List<Expense> rows = readSegment(segment);
+            if (rows.isEmpty()) continue;
+            try {
+                archiveSegments.set(i, ArchiveSegment.write(segment.getFile(), rows, baseCurrency,
+                        rates.getFingerprint(), this::archivedBaseAmount));
+            } catch (IOException e) {
+                System.err.println("Error rewriting archive " + segment.getFile().getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean needsRewrite(ArchiveSegment segment) {
+        // Older formats are also rewritten once, to add the summary block, id filter and rates fingerprint
+        if (!segment.isCurrentFormat() || !baseCurrency.equals(segment.getBaseCurrency())) return true;
+        // Totals in the header were converted with the rates of the day; only foreign rows depend on them
+        if (segment.getRatesFingerprint() == rates.getFingerprint()) return false;
+        for (String currency : segment.getCurrencies()) {
+            if (!currency.equals(baseCurrency)) return true;
+        }
+        return false;
+    }
+
+    private boolean writePendingArchive(Collection<File> segments) {
+        List<String> names = new ArrayList<>();
+        for (File segment : segments) {
+            names.add(segment.getName());
+        }
+        try {
+            Files.write(pendingArchiveFile.toPath(), names);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error archiving expenses: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Finishes an archive run that stopped between writing its segments and rewriting
+     * expenses.csv: live rows already stored in those segments are dropped, so they are
+     * not counted twice or archived a second time.
+     */
+    private void recoverPendingArchive() {
+        if (!pendingArchiveFile.exists()) {
+            return;
+        }
+
+        Set<String> names;
+        try {
+            names = new HashSet<>(Files.readAllLines(pendingArchiveFile.toPath()));
+        } catch (IOException e) {
+            System.err.println("Error reading " + pendingArchiveFile.getName() + ": " + e.getMessage());
+            return;
+        }
+        Set<String> archivedIds = new HashSet<>();
+        for (ArchiveSegment segment : archiveSegments) {
+            if (!names.contains(segment.getFile().getName())) continue;
+            for (Expense expense : readSegment(segment)) {
+                archivedIds.add(expense.getId());
+            }
+        }
+        boolean removed = expenses.removeIf(expense -> {
+            if (!archivedIds.contains(expense.getId())) return false;
+            unindexExpense(expense);
+            return true;
+        });
+        if (removed) {
+            savePending = true;
+            if (!flushNow()) return;
+        }
+        pendingArchiveFile.delete();
+    }
+
+    private void loadArchive() {
+        File[] files = archiveDir.listFiles((dir, name) -> name.endsWith(".seg"));
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+        for (File file : files) {
+            try {
+                archiveSegments.add(ArchiveSegment.open(file));
+            } catch (IOException e) {
+                System.err.println("Error loading archive " + file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
     private void saveBudgets() {
-        try (PrintWriter writer = new PrintWriter(new FileWriter(BUDGET_FILE))) {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(budgetFile))) {
             writer.println("Category,Budget");
             for (Map.Entry<String, Double> entry : categoryBudgets.entrySet()) {
                 writer.println(entry.getKey() + "," + entry.getValue());
@@ -194,13 +937,53 @@ public class ExpenseController {
         }
     }
 
+    private void saveSettings() {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(settingsFile))) {
+            writer.println("Key,Value");
+            writer.println("BaseCurrency," + baseCurrency);
+            if (archiveAgeYears > 0) {
+                writer.println("ArchiveAgeYears," + archiveAgeYears);
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving settings: " + e.getMessage());
+        }
+    }
+
+    private void loadSettings() {
+        File file = settingsFile;
+        if (!file.exists()) {
+            return;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(settingsFile))) {
+            String line = reader.readLine(); // skip header
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 2 && parts[0].equals("BaseCurrency")) {
+                    String code = parts[1].trim().toUpperCase();
+                    if (Currencies.isValid(code)) {
+                        baseCurrency = code;
+                    } else {
+                        System.err.println("Invalid BaseCurrency '" + code + "' in settings.csv; using " + baseCurrency);
+                    }
+                } else if (parts.length >= 2 && parts[0].equals("ArchiveAgeYears")) {
+                    archiveAgeYears = Math.max(0, Integer.parseInt(parts[1].trim()));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading settings: " + e.getMessage());
+        } catch (NumberFormatException e) {
+            System.err.println("Error parsing ArchiveAgeYears in settings.csv: " + e.getMessage());
+        }
+    }
+
     private void loadBudgets() {
-        File file = new File(BUDGET_FILE);
+        File file = budgetFile;
         if (!file.exists()) {
             return;
         }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(BUDGET_FILE))) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(budgetFile))) {
             String line = reader.readLine(); // skip header
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(",");
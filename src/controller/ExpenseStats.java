@@ -0,0 +1,132 @@
+package controller;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Per-category, per-month distribution state kept next to the expense list.
+ * Histograms are exact and updated in place; quantile sketches cannot forget a
+ * value, so removing one marks that month and category dirty and the controller
+ * re-sketches just that bucket. Archived rows cannot change, so their sketches come
+ * ready-made from the archive segments and are kept apart from the live ones.
+ */
+class ExpenseStats {
+    static final double[] HISTOGRAM_BOUNDS = {0, 100, 500, 1000, 5000, 10000, 50000};
+
+    private final TreeMap<YearMonth, Map<String, Bucket>> months = new TreeMap<>();
+    private final Map<YearMonth, Set<String>> dirtyBuckets = new HashMap<>();
+
+    private static class Bucket {
+        final QuantileSketch sketch = new QuantileSketch();
+        QuantileSketch archived;
+        final long[] histogram = new long[HISTOGRAM_BOUNDS.length];
+    }
+
+    void add(LocalDate date, String category, double amount) {
+        Bucket bucket = bucket(YearMonth.from(date), category);
+        bucket.sketch.add(amount);
+        bucket.histogram[histogramSlot(amount)]++;
+    }
+
+    void addArchived(YearMonth month, String category, QuantileSketch sketch, long[] histogram) {
+        Bucket bucket = bucket(month, category);
+        if (bucket.archived == null) {
+            bucket.archived = sketch;
+        } else {
+            bucket.archived.merge(sketch);
+        }
+        for (int i = 0; i < Math.min(histogram.length, bucket.histogram.length); i++) {
+            bucket.histogram[i] += histogram[i];
+        }
+    }
+
+    void remove(LocalDate date, String category, double amount) {
+        YearMonth month = YearMonth.from(date);
+        Bucket bucket = bucket(month, category);
+        bucket.histogram[histogramSlot(amount)]--;
+        dirtyBuckets.computeIfAbsent(month, m -> new HashSet<>()).add(category);
+    }
+
+    /** Months with at least one stale sketch, and the categories whose sketch is stale. */
+    Map<YearMonth, Set<String>> getDirtyBuckets() {
+        Map<YearMonth, Set<String>> copy = new HashMap<>();
+        for (Map.Entry<YearMonth, Set<String>> entry : dirtyBuckets.entrySet()) {
+            copy.put(entry.getKey(), new HashSet<>(entry.getValue()));
+        }
+        return copy;
+    }
+
+    void resetSketch(YearMonth month, String category) {
+        bucket(month, category).sketch.clear();
+        Set<String> categories = dirtyBuckets.get(month);
+        if (categories != null && categories.remove(category) && categories.isEmpty()) {
+            dirtyBuckets.remove(month);
+        }
+    }
+
+    void addToSketch(LocalDate date, String category, double amount) {
+        bucket(YearMonth.from(date), category).sketch.add(amount);
+    }
+
+    QuantileSketch mergeSketches(String category, YearMonth from, YearMonth to) {
+        QuantileSketch merged = new QuantileSketch();
+        for (Map<String, Bucket> categories : months.subMap(from, true, to, true).values()) {
+            for (Map.Entry<String, Bucket> entry : categories.entrySet()) {
+                if (category == null || category.equals(entry.getKey())) {
+                    merged.merge(entry.getValue().sketch);
+                    if (entry.getValue().archived != null) {
+                        merged.merge(entry.getValue().archived);
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    long[] mergeHistograms(String category, YearMonth from, YearMonth to) {
+        long[] merged = new long[HISTOGRAM_BOUNDS.length];
+        for (Map<String, Bucket> categories : months.subMap(from, true, to, true).values()) {
+            for (Map.Entry<String, Bucket> entry : categories.entrySet()) {
+                if (category == null || category.equals(entry.getKey())) {
+                    long[] histogram = entry.getValue().histogram;
+                    for (int i = 0; i < merged.length; i++) {
+                        merged[i] += histogram[i];
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    long estimatedBytes() {
+        long bytes = 0;
+        for (Map<String, Bucket> categories : months.values()) {
+            for (Bucket bucket : categories.values()) {
+                bytes += bucket.sketch.estimatedBytes() + bucket.histogram.length * 8L + 64;
+                if (bucket.archived != null) {
+                    bytes += bucket.archived.estimatedBytes();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    static String histogramLabel(int slot) {
+        if (slot == HISTOGRAM_BOUNDS.length - 1) {
+            return String.format("%.0f+", HISTOGRAM_BOUNDS[slot]);
+        }
+        return String.format("%.0f-%.0f", HISTOGRAM_BOUNDS[slot], HISTOGRAM_BOUNDS[slot + 1]);
+    }
+
+    private Bucket bucket(YearMonth month, String category) {
+        return months.computeIfAbsent(month, m -> new HashMap<>())
+                .computeIfAbsent(category, c -> new Bucket());
+    }
+
+    static int histogramSlot(double amount) {
+        int slot = Arrays.binarySearch(HISTOGRAM_BOUNDS, amount);
+        if (slot < 0) slot = -slot - 2;
+        return Math.max(0, slot);
+    }
+}
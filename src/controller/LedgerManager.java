@@ -0,0 +1,282 @@
+package controller;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Hosts many named ledgers, each in its own directory under a root folder.
+ * Ledgers share a bounded I/O pool (for saves) and a bounded compute pool, and
+ * are kept in least-recently-used order; when the combined estimated footprint
+ * goes over the memory budget the coldest ledgers are flushed and dropped. The
+ * budget is checked whenever a ledger is loaded and on a timer, since ledgers also
+ * grow after they are opened. Ledgers in use by a submitted task are leased and
+ * never evicted until the task ends. Opening an evicted ledger again just reloads
+ * it from its directory. Closing the manager lets tasks already submitted finish,
+ * then closes every ledger, and only then stops the I/O pool their saves run on.
+ */
+public class LedgerManager implements AutoCloseable {
+    private static final Pattern LEDGER_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final long BUDGET_CHECK_INTERVAL_MS = 1000;
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final File rootDir;
+    private final long memoryBudgetBytes;
+    private final ExecutorService ioPool;
+    private final ExecutorService computePool;
+    private final ScheduledExecutorService budgetTimer;
+    private final LinkedHashMap<String, ExpenseController> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private final Map<String, Integer> leases = new HashMap<>();
+    // Evicted ledgers whose close() may still be writing; a reload waits for it first
+    private final Map<String, ExpenseController> closing = new HashMap<>();
+    private long evictions;
+    // Set when close() starts: no new opens or tasks, but queued tasks still load ledgers
+    private boolean shuttingDown;
+    // Set once the ledgers are being closed: nothing may load a ledger any more
+    private boolean closed;
+
+    public LedgerManager(File rootDir, long memoryBudgetBytes, int ioThreads, int computeThreads) {
+        this.rootDir = rootDir;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.ioPool = Executors.newFixedThreadPool(ioThreads, daemonThreads("ledger-io"));
+        this.computePool = Executors.newFixedThreadPool(computeThreads, daemonThreads("ledger-compute"));
+        this.budgetTimer = Executors.newSingleThreadScheduledExecutor(daemonThreads("ledger-budget"));
+        budgetTimer.scheduleWithFixedDelay(this::enforceBudget,
+                BUDGET_CHECK_INTERVAL_MS, BUDGET_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the ledger, loading it if it is not resident. Callers should not hold
+     * on to the controller across calls: once evicted it rejects further changes.
+     */
+    public ExpenseController open(String name) {
+        if (!LEDGER_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid ledger name: " + name);
+        }
+        ensureAccepting();
+        return load(name);
+    }
+
+    /**
+     * Runs {@code task} against the named ledger on the shared compute pool. The
+     * ledger is leased for the duration of the task, so it cannot be evicted under it.
+     */
+    public <T> Future<T> submit(String name, Function<ExpenseController, T> task) {
+        if (!LEDGER_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid ledger name: " + name);
+        }
+        ensureAccepting();
+        try {
+            return computePool.submit(() -> {
+                ExpenseController controller = acquire(name);
+                try {
+                    return task.apply(controller);
+                } finally {
+                    release(name);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // close() started between the check and the submit
+            throw new IllegalStateException("Ledger manager has been closed");
+        }
+    }
+
+    /** Evicts cold, unleased ledgers until the estimated footprint fits the budget. */
+    public void enforceBudget() {
+        evictOverBudget(null);
+    }
+
+    public synchronized boolean isResident(String name) {
+        return resident.containsKey(name);
+    }
+
+    public synchronized int getResidentCount() {
+        return resident.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public long estimatedMemoryBytes() {
+        long total = 0;
+        for (ExpenseController controller : residentSnapshot().values()) {
+            total += controller.estimatedMemoryBytes();
+        }
+        return total;
+    }
+
+    /** Evicts the ledger unless a running task holds a lease on it; returns whether it was evicted. */
+    public boolean evict(String name) {
+        ExpenseController controller;
+        synchronized (this) {
+            if (leases.containsKey(name)) return false;
+            controller = resident.remove(name);
+            if (controller == null) return false;
+            closing.put(name, controller);
+            evictions++;
+        }
+        finishClose(name, controller);
+        return true;
+    }
+
+    /**
+     * Stops taking new work, waits for submitted tasks, closes every ledger and then
+     * the I/O pool. Once this returns every ledger's files are final.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (shuttingDown) return;
+            shuttingDown = true;
+        }
+        budgetTimer.shutdownNow();
+        // Queued tasks may still load ledgers and queue saves, so they drain before anything is closed
+        computePool.shutdown();
+        awaitPool(computePool, "ledger tasks");
+
+        Map<String, ExpenseController> open;
+        synchronized (this) {
+            closed = true;
+            open = new LinkedHashMap<>(closing);
+            open.putAll(resident);
+            closing.putAll(resident);
+            resident.clear();
+        }
+        for (Map.Entry<String, ExpenseController> entry : open.entrySet()) {
+            finishClose(entry.getKey(), entry.getValue());
+        }
+        // Every close() above has written its ledger, so nothing needs the I/O pool any more
+        ioPool.shutdown();
+        awaitPool(ioPool, "ledger saves");
+    }
+
+    private void awaitPool(ExecutorService pool, String what) {
+        try {
+            if (!pool.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Gave up waiting for " + what + " after " + CLOSE_TIMEOUT_SECONDS + "s");
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void ensureAccepting() {
+        if (shuttingDown) {
+            throw new IllegalStateException("Ledger manager has been closed");
+        }
+    }
+
+    private ExpenseController load(String name) {
+        // Loads are serialized per ledger but not across ledgers, so one slow
+        // ledger does not block the others and a ledger is never loaded twice
+        ExpenseController loaded;
+        synchronized (loadLocks.computeIfAbsent(name, n -> new Object())) {
+            ExpenseController evicted;
+            synchronized (this) {
+                ExpenseController controller = resident.get(name);
+                if (controller != null) return controller;
+                evicted = closing.get(name);
+            }
+            if (evicted != null) {
+                finishClose(name, evicted);
+            }
+
+            loaded = new ExpenseController(new File(rootDir, name), ioPool);
+            boolean rejected;
+            synchronized (this) {
+                // A task that outlived close()'s wait must not add a ledger nobody will close
+                rejected = closed;
+                if (!rejected) resident.put(name, loaded);
+            }
+            if (rejected) {
+                loaded.close();
+                throw new IllegalStateException("Ledger manager has been closed");
+            }
+        }
+        // Victims are closed after the load lock is released, so two loads never
+        // wait on each other's ledgers
+        evictOverBudget(name);
+        return loaded;
+    }
+
+    private ExpenseController acquire(String name) {
+        while (true) {
+            ExpenseController controller = load(name);
+            synchronized (this) {
+                // Another load may have evicted it between open() and here; then load it again
+                if (resident.get(name) == controller) {
+                    leases.merge(name, 1, Integer::sum);
+                    return controller;
+                }
+            }
+        }
+    }
+
+    private synchronized void release(String name) {
+        leases.computeIfPresent(name, (n, count) -> count == 1 ? null : count - 1);
+    }
+
+    private void evictOverBudget(String keep) {
+        // Estimates take each ledger's own lock, so they are gathered without holding the manager's
+        Map<String, ExpenseController> candidates = residentSnapshot();
+        Map<String, Long> sizes = new HashMap<>();
+        long total = 0;
+        for (Map.Entry<String, ExpenseController> entry : candidates.entrySet()) {
+            long size = entry.getValue().estimatedMemoryBytes();
+            sizes.put(entry.getKey(), size);
+            total += size;
+        }
+        if (total <= memoryBudgetBytes) return;
+
+        Map<String, ExpenseController> victims = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, ExpenseController> entry : candidates.entrySet()) {
+                if (total <= memoryBudgetBytes) break;
+                String name = entry.getKey();
+                if (name.equals(keep) || leases.containsKey(name)) continue;
+                // remove(key, value) skips ledgers reloaded or evicted since the snapshot
+                if (resident.remove(name, entry.getValue())) {
+                    closing.put(name, entry.getValue());
+                    victims.put(name, entry.getValue());
+                    total -= sizes.get(name);
+                    evictions++;
+                }
+            }
+        }
+        for (Map.Entry<String, ExpenseController> entry : victims.entrySet()) {
+            finishClose(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void finishClose(String name, ExpenseController controller) {
+        // close() is idempotent and returns only once the ledger's files are final,
+        // so a reload that gets here first simply waits for the same writes
+        controller.close();
+        synchronized (this) {
+            closing.remove(name, controller);
+        }
+    }
+
+    private synchronized Map<String, ExpenseController> residentSnapshot() {
+        // Copying iterates the access-ordered map without reordering it; coldest first
+        return new LinkedHashMap<>(resident);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        ThreadFactory defaults = Executors.defaultThreadFactory();
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = defaults.newThread(runnable);
+            thread.setName(prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
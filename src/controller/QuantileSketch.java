@@ -0,0 +1,189 @@
+package controller;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch built from a stack of fixed-size compactors
+ * (KLL style). Level i holds samples of weight 2^i; when a level fills up it is
+ * sorted and every other sample is promoted to the next level.
+ */
+public class QuantileSketch {
+    private static final int DEFAULT_CAPACITY = 128;
+    private static final int INITIAL_BUFFER = 8;
+
+    private final int capacity;
+    private double[][] levels;
+    private int[] sizes;
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private boolean oddOffset;
+
+    public QuantileSketch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public QuantileSketch(int capacity) {
+        this.capacity = Math.max(2, capacity + (capacity & 1));
+        clear();
+    }
+
+    public void add(double value) {
+        count++;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        insert(0, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.count == 0) return;
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                insert(level, other.levels[level][i]);
+            }
+        }
+    }
+
+    public void clear() {
+        // Buffers grow up to capacity, so the many small per-month sketches stay small
+        levels = new double[][] {new double[Math.min(INITIAL_BUFFER, capacity)]};
+        sizes = new int[1];
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long estimatedBytes() {
+        long bytes = 64;
+        for (double[] level : levels) {
+            bytes += level.length * 8L + 16;
+        }
+        return bytes;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(count);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeBoolean(oddOffset);
+        out.writeInt(levels.length);
+        for (int level = 0; level < levels.length; level++) {
+            out.writeInt(sizes[level]);
+            for (int i = 0; i < sizes[level]; i++) {
+                out.writeDouble(levels[level][i]);
+            }
+        }
+    }
+
+    static QuantileSketch readFrom(DataInputStream in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch(in.readInt());
+        sketch.count = in.readLong();
+        sketch.min = in.readDouble();
+        sketch.max = in.readDouble();
+        sketch.oddOffset = in.readBoolean();
+        int levelCount = in.readInt();
+        sketch.levels = new double[levelCount][];
+        sketch.sizes = new int[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            int size = in.readInt();
+            if (size < 0 || size >= sketch.capacity) {
+                throw new IOException("Corrupt quantile sketch level size: " + size);
+            }
+            sketch.levels[level] = new double[Math.min(sketch.capacity, Math.max(INITIAL_BUFFER, size))];
+            sketch.sizes[level] = size;
+            for (int i = 0; i < size; i++) {
+                sketch.levels[level][i] = in.readDouble();
+            }
+        }
+        return sketch;
+    }
+
+    public double quantile(double q) {
+        return quantiles(q)[0];
+    }
+
+    public double[] quantiles(double... qs) {
+        double[] result = new double[qs.length];
+        if (count == 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        double[][] sorted = new double[levels.length][];
+        long totalWeight = 0;
+        for (int level = 0; level < levels.length; level++) {
+            sorted[level] = Arrays.copyOf(levels[level], sizes[level]);
+            Arrays.sort(sorted[level]);
+            totalWeight += (long) sizes[level] << level;
+        }
+
+        // qs may come in any order, so walk the merged levels once per quantile
+        for (int i = 0; i < qs.length; i++) {
+            double q = qs[i];
+            if (q <= 0) {
+                result[i] = min;
+            } else if (q >= 1) {
+                result[i] = max;
+            } else {
+                result[i] = valueAtRank(sorted, (long) Math.ceil(q * totalWeight));
+            }
+        }
+        return result;
+    }
+
+    private double valueAtRank(double[][] sorted, long rank) {
+        int[] heads = new int[sorted.length];
+        long seen = 0;
+        while (true) {
+            int best = -1;
+            for (int level = 0; level < sorted.length; level++) {
+                if (heads[level] < sorted[level].length
+                        && (best == -1 || sorted[level][heads[level]] < sorted[best][heads[best]])) {
+                    best = level;
+                }
+            }
+            if (best == -1) return max;
+            double value = sorted[best][heads[best]++];
+            seen += 1L << best;
+            if (seen >= rank) return value;
+        }
+    }
+
+    private void insert(int level, double value) {
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            levels[level] = new double[Math.min(INITIAL_BUFFER, capacity)];
+            sizes = Arrays.copyOf(sizes, level + 1);
+        }
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.min(capacity, levels[level].length * 2));
+        }
+        levels[level][sizes[level]++] = value;
+        if (sizes[level] == capacity) {
+            compact(level);
+        }
+    }
+
+    private void compact(int level) {
+        double[] buffer = levels[level];
+        int size = sizes[level];
+        Arrays.sort(buffer, 0, size);
+        sizes[level] = 0;
+        int offset = oddOffset ? 1 : 0;
+        oddOffset = !oddOffset;
+        for (int i = offset; i < size; i += 2) {
+            insert(level + 1, buffer[i]);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package controller;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Daily spend buckets per category with 7 and 30 day window totals kept up to
+ * date on every add/remove, including back-dated ones. Windows end on the anchor
+ * day (today by the ledger's clock) and are recomputed from the buckets only when
+ * the day changes.
+ * Buckets are dense only for the current and previous year; days outside that
+ * horizon (old history or mistyped dates) are kept sparsely.
+ */
+class SpendTrend {
+    static final int[] WINDOWS = {7, 30};
+
+    private final Clock clock;
+    private long anchorDay;
+    private long horizonStart;
+    private long horizonEnd;
+    private final CategoryTrend all;
+    private final Map<String, CategoryTrend> categories = new HashMap<>();
+
+    SpendTrend(Clock clock) {
+        this.clock = clock;
+        this.anchorDay = LocalDate.now(clock).toEpochDay();
+        this.horizonStart = horizonStart(anchorDay);
+        this.horizonEnd = horizonEnd(anchorDay);
+        // Built after the horizon is known, since its daily series is sized from it
+        this.all = new CategoryTrend();
+    }
+
+    private class CategoryTrend {
+        final DailySeries daily = new DailySeries(horizonStart, horizonEnd);
+        final double[] windowTotals = new double[WINDOWS.length];
+        final Map<YearMonth, Double> monthTotals = new HashMap<>();
+
+        void apply(LocalDate date, double amount) {
+            long day = date.toEpochDay();
+            daily.add(day, amount);
+            monthTotals.merge(YearMonth.from(date), amount, Double::sum);
+            for (int i = 0; i < WINDOWS.length; i++) {
+                if (day <= anchorDay && day > anchorDay - WINDOWS[i]) {
+                    windowTotals[i] += amount;
+                }
+            }
+        }
+
+        void recomputeWindows() {
+            for (int i = 0; i < WINDOWS.length; i++) {
+                windowTotals[i] = daily.sum(anchorDay - WINDOWS[i] + 1, anchorDay);
+            }
+        }
+    }
+
+    private static class DailySeries {
+        private static final int INITIAL_DAYS = 64;
+
+        private long denseStart;
+        private long denseEnd;
+        private long firstDay;
+        private double[] totals = new double[0];
+        private final Map<Long, Double> sparse = new HashMap<>();
+
+        DailySeries(long denseStart, long denseEnd) {
+            this.denseStart = denseStart;
+            this.denseEnd = denseEnd;
+        }
+
+        void add(long day, double amount) {
+            if (day < denseStart || day > denseEnd) {
+                // Drop buckets that net out to zero so deleted history does not linger
+                sparse.merge(day, amount, (old, added) -> Math.abs(old + added) < 1e-9 ? null : old + added);
+                return;
+            }
+            ensureCapacity(day);
+            totals[(int) (day - firstDay)] += amount;
+        }
+
+        double get(long day) {
+            long index = day - firstDay;
+            if (index >= 0 && index < totals.length) return totals[(int) index];
+            return sparse.isEmpty() ? 0 : sparse.getOrDefault(day, 0.0);
+        }
+
+        /** Moves the dense range, e.g. when the year changes, re-filing every bucket. */
+        void setDenseRange(long start, long end) {
+            Map<Long, Double> buckets = new HashMap<>(sparse);
+            for (int i = 0; i < totals.length; i++) {
+                if (totals[i] != 0) buckets.put(firstDay + i, totals[i]);
+            }
+            denseStart = start;
+            denseEnd = end;
+            totals = new double[0];
+            sparse.clear();
+            for (Map.Entry<Long, Double> entry : buckets.entrySet()) {
+                add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        long estimatedBytes() {
+            return totals.length * 8L + sparse.size() * 64L;
+        }
+
+        double sum(long fromDay, long toDay) {
+            double sum = 0;
+            for (long day = fromDay; day <= toDay; day++) {
+                sum += get(day);
+            }
+            return sum;
+        }
+
+        private void ensureCapacity(long day) {
+            if (totals.length == 0) {
+                firstDay = Math.max(denseStart, day - INITIAL_DAYS / 2);
+                totals = new double[(int) Math.min(INITIAL_DAYS, denseEnd - firstDay + 1)];
+                return;
+            }
+            long lastDay = firstDay + totals.length - 1;
+            if (day >= firstDay && day <= lastDay) return;
+
+            // Start small so idle ledgers stay cheap, then double on the side that overflowed,
+            // never past the dense range
+            long newFirst = day < firstDay ? Math.max(denseStart, Math.min(day, firstDay - totals.length)) : firstDay;
+            long newLast = day > lastDay ? Math.min(denseEnd, Math.max(day, lastDay + totals.length)) : lastDay;
+            double[] grown = new double[(int) (newLast - newFirst + 1)];
+            System.arraycopy(totals, 0, grown, (int) (firstDay - newFirst), totals.length);
+            totals = grown;
+            firstDay = newFirst;
+        }
+    }
+
+    void add(LocalDate date, String category, double amount) {
+        all.apply(date, amount);
+        categories.computeIfAbsent(category, c -> new CategoryTrend()).apply(date, amount);
+    }
+
+    void remove(LocalDate date, String category, double amount) {
+        add(date, category, -amount);
+    }
+
+    double windowTotal(String category, int days) {
+        reanchor();
+        CategoryTrend trend = trend(category);
+        if (trend == null) return 0;
+        for (int i = 0; i < WINDOWS.length; i++) {
+            if (WINDOWS[i] == days) return trend.windowTotals[i];
+        }
+        return trend.daily.sum(anchorDay - days + 1, anchorDay);
+    }
+
+    double monthTotal(String category, YearMonth month) {
+        CategoryTrend trend = trend(category);
+        return trend == null ? 0 : trend.monthTotals.getOrDefault(month, 0.0);
+    }
+
+    /**
+     * Trailing {@code days}-day totals for every day of {@code year}, computed in one
+     * pass by adding the entering bucket and subtracting the leaving one.
+     */
+    double[] rollingTotals(String category, int year, int days) {
+        LocalDate start = LocalDate.ofYearDay(year, 1);
+        double[] result = new double[start.lengthOfYear()];
+        CategoryTrend trend = trend(category);
+        if (trend == null) return result;
+
+        long firstDay = start.toEpochDay();
+        double window = trend.daily.sum(firstDay - days + 1, firstDay);
+        result[0] = window;
+        for (int i = 1; i < result.length; i++) {
+            long day = firstDay + i;
+            window += trend.daily.get(day) - trend.daily.get(day - days);
+            result[i] = window;
+        }
+        return result;
+    }
+
+    long estimatedBytes() {
+        long bytes = 0;
+        for (CategoryTrend trend : categories.values()) {
+            bytes += trend.daily.estimatedBytes() + trend.monthTotals.size() * 64L;
+        }
+        return bytes + all.daily.estimatedBytes() + all.monthTotals.size() * 64L;
+    }
+
+    private CategoryTrend trend(String category) {
+        return category == null ? all : categories.get(category);
+    }
+
+    private void reanchor() {
+        long today = LocalDate.now(clock).toEpochDay();
+        if (today == anchorDay) return;
+        anchorDay = today;
+        boolean newHorizon = horizonStart(today) != horizonStart;
+        horizonStart = horizonStart(today);
+        horizonEnd = horizonEnd(today);
+        for (CategoryTrend trend : trends()) {
+            if (newHorizon) {
+                trend.daily.setDenseRange(horizonStart, horizonEnd);
+            }
+            trend.recomputeWindows();
+        }
+    }
+
+    private List<CategoryTrend> trends() {
+        List<CategoryTrend> trends = new ArrayList<>(categories.values());
+        trends.add(all);
+        return trends;
+    }
+
+    private static long horizonStart(long day) {
+        return LocalDate.ofEpochDay(day).minusYears(1).withDayOfYear(1).toEpochDay();
+    }
+
+    private static long horizonEnd(long day) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        return date.withDayOfYear(date.lengthOfYear()).toEpochDay();
+    }
+}
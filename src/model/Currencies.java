@@ -0,0 +1,44 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Numbers every currency code seen by the process, so an expense resolves its code
+ * to an index once and conversions can use plain array reads.
+ */
+public final class Currencies {
+    private static final Pattern CODE = Pattern.compile("[A-Z]{3}");
+
+    private static final Map<String, Integer> indexes = new HashMap<>();
+    private static final List<String> codes = new ArrayList<>();
+
+    private Currencies() {
+    }
+
+    /** True for a three-letter upper-case ISO 4217 style code such as INR or USD. */
+    public static boolean isValid(String code) {
+        return code != null && CODE.matcher(code).matches();
+    }
+
+    public static synchronized int indexOf(String code) {
+        Integer index = indexes.get(code);
+        if (index == null) {
+            index = codes.size();
+            indexes.put(code, index);
+            codes.add(code);
+        }
+        return index;
+    }
+
+    public static synchronized String codeAt(int index) {
+        return codes.get(index);
+    }
+
+    public static synchronized int count() {
+        return codes.size();
+    }
+}
@@ -1,35 +1,53 @@
 package model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 public class Expense implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     
+    /** Categories offered when entering expenses. */
+    public static final List<String> CATEGORIES = Collections.unmodifiableList(Arrays.asList(
+        "Food", "Transport", "Bills", "Entertainment", "Shopping", 
+        "Healthcare", "Education", "Other"
+    ));
+    
     private String id;
     private LocalDate date;
     private String category;
     private double amount;
+    private String currency;
+    private transient int currencyIndex = -1;
     private String description;
     
     public Expense(String id, LocalDate date, String category, double amount, String description) {
-        this.id = id;
-        this.date = date;
-        this.category = category;
-        this.amount = amount;
-        this.description = description;
+        this(id, date, category, amount, null, description);
     }
     
     public Expense(LocalDate date, String category, double amount, String description) {
-        this.id = String.valueOf(System.currentTimeMillis());
+        this(date, category, amount, null, description);
+    }
+    
+    public Expense(String id, LocalDate date, String category, double amount, String currency, String description) {
+        this.id = id;
         this.date = date;
         this.category = category;
         this.amount = amount;
+        setCurrency(currency);
         this.description = description;
     }
     
+    public Expense(LocalDate date, String category, double amount, String currency, String description) {
+        this(String.valueOf(System.currentTimeMillis()), date, category, amount, currency, description);
+    }
+    
     public String getId() {
         return id;
     }
@@ -62,6 +80,21 @@ public class Expense implements Serializable {
         this.amount = amount;
     }
     
+    /** ISO currency code, or null for the ledger's base currency. */
+    public String getCurrency() {
+        return currency;
+    }
+    
+    public void setCurrency(String currency) {
+        this.currency = currency == null ? null : currency.trim().toUpperCase();
+        this.currencyIndex = this.currency == null ? -1 : Currencies.indexOf(this.currency);
+    }
+    
+    /** Process-wide index of the currency code (see Currencies), or -1 when there is none. */
+    public int getCurrencyIndex() {
+        return currencyIndex;
+    }
+    
     public String getDescription() {
         return description;
     }
@@ -78,10 +111,16 @@ public class Expense implements Serializable {
         return LocalDate.parse(dateString, DATE_FORMATTER);
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // Indexes are only meaningful within one process, so resolve the code again
+        setCurrency(currency);
+    }
+
     @Override
     public String toString() {
-        return String.format("%s,%s,%s,₹%.2f,%s",
-                id, getDateString(), category, amount, description);
+        return String.format("%s,%s,%s,%s%.2f,%s",
+                id, getDateString(), category, currency == null ? "" : currency + " ", amount, description);
     }
 
 }
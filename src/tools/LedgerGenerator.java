@@ -0,0 +1,160 @@
+package tools;
+
+import controller.ExpenseController;
+import model.Expense;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Generates realistic synthetic ledgers: seasonal dates (more spend around the
+ * year end and on weekends), a skewed category mix over Expense.CATEGORIES,
+ * log-normal amounts with a heavy tail, and a small vocabulary of descriptions.
+ * The same seed and end date always produce the same ledger.
+ *
+ * Usage: java -cp bin tools.LedgerGenerator --dir data/synthetic --rows 100000 [--years 3] [--seed 42]
+ *            [--end 2025-12-31]
+ */
+public class LedgerGenerator {
+    // Fixed rather than today, so a run can be repeated exactly later
+    static final String DEFAULT_END = "2025-12-31";
+
+    private static final String[][] DESCRIPTIONS = {
+        {"Groceries", "Lunch", "Coffee", "Dinner out", "Snacks", "Bakery"},
+        {"Bus fare", "Fuel", "Taxi", "Metro card", "Parking", "Train ticket"},
+        {"Electricity bill", "Internet", "Mobile recharge", "Water bill", "Rent", "Gas cylinder"},
+        {"Movie tickets", "Streaming subscription", "Concert", "Games", "Books"},
+        {"Clothes", "Shoes", "Electronics", "Home decor", "Gifts"},
+        {"Pharmacy", "Doctor visit", "Lab tests", "Dental checkup"},
+        {"Course fee", "Stationery", "Exam fee", "Online course"},
+        {"Miscellaneous", "Donation", "Repairs", "Household items"}
+    };
+    // Log-normal location per category (ln of a typical amount)
+    private static final double[] TYPICAL_AMOUNT_LOG = {5.3, 4.8, 7.2, 6.2, 7.0, 6.5, 7.5, 5.5};
+
+    private final Random random;
+    private final LocalDate start;
+    private final int days;
+    private final double[] categoryWeights;
+    private final double[][] descriptionWeights;
+
+    public LedgerGenerator(long seed, LocalDate start, LocalDate end) {
+        this.random = new Random(seed);
+        this.start = start;
+        this.days = (int) ChronoUnit.DAYS.between(start, end) + 1;
+        this.categoryWeights = zipfWeights(Expense.CATEGORIES.size(), 1.1);
+        this.descriptionWeights = new double[DESCRIPTIONS.length][];
+        for (int i = 0; i < DESCRIPTIONS.length; i++) {
+            descriptionWeights[i] = zipfWeights(DESCRIPTIONS[i].length, 1.0);
+        }
+    }
+
+    public List<Expense> generate(String idPrefix, int rows) {
+        List<Expense> expenses = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            expenses.add(nextExpense(idPrefix + i));
+        }
+        return expenses;
+    }
+
+    public Expense nextExpense(String id) {
+        int category = pick(categoryWeights);
+        int vocabulary = Math.min(category, DESCRIPTIONS.length - 1);
+        String description = DESCRIPTIONS[vocabulary][pick(descriptionWeights[vocabulary])];
+        return new Expense(id, nextDate(), Expense.CATEGORIES.get(category), nextAmount(category), null, description);
+    }
+
+    /** A word that appears in generated descriptions or categories, for search load. */
+    public String nextSearchTerm() {
+        String[] vocabulary = DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)];
+        String phrase = vocabulary[random.nextInt(vocabulary.length)];
+        return phrase.split(" ")[0].toLowerCase();
+    }
+
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    private LocalDate nextDate() {
+        // Rejection sampling against a seasonal weight: peaks in December, dips mid-year
+        while (true) {
+            LocalDate date = start.plusDays(random.nextInt(days));
+            double season = 1 + 0.35 * Math.cos(2 * Math.PI * (date.getMonthValue() - 12) / 12.0);
+            double weekend = date.getDayOfWeek().getValue() >= 6 ? 1.3 : 1.0;
+            if (random.nextDouble() * 1.35 * 1.3 < season * weekend) {
+                return date;
+            }
+        }
+    }
+
+    private double nextAmount(int category) {
+        double mu = TYPICAL_AMOUNT_LOG[Math.min(category, TYPICAL_AMOUNT_LOG.length - 1)];
+        double amount = Math.exp(mu + 0.9 * random.nextGaussian());
+        if (random.nextDouble() < 0.01) {
+            // Rare large purchases: Pareto tail on top of the log-normal body
+            amount *= Math.pow(1 - random.nextDouble(), -1 / 1.5);
+        }
+        return Math.round(amount * 100) / 100.0;
+    }
+
+    private int pick(double[] weights) {
+        double r = random.nextDouble();
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    private static double[] zipfWeights(int n, double exponent) {
+        double[] weights = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            weights[i] = 1 / Math.pow(i + 1, exponent);
+            sum += weights[i];
+        }
+        for (int i = 0; i < n; i++) {
+            weights[i] /= sum;
+        }
+        return weights;
+    }
+
+    /** Refuses to reuse a ledger directory, so rows with the same ids are never appended twice. */
+    static void requireEmptyDir(File dir) {
+        String[] children = dir.list();
+        if (children != null && children.length > 0) {
+            System.err.println("Refusing to write into non-empty directory " + dir.getPath()
+                    + "; pass a new or empty --dir");
+            System.exit(1);
+        }
+    }
+
+    static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option but got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = parseArgs(args);
+        File dir = new File(options.getOrDefault("dir", "data/synthetic"));
+        int rows = Integer.parseInt(options.getOrDefault("rows", "10000"));
+        int years = Integer.parseInt(options.getOrDefault("years", "3"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        LocalDate end = LocalDate.parse(options.getOrDefault("end", DEFAULT_END));
+        requireEmptyDir(dir);
+
+        LedgerGenerator generator = new LedgerGenerator(seed, end.minusYears(years).plusDays(1), end);
+        ExpenseController controller = new ExpenseController(dir, Runnable::run);
+        controller.addExpenses(generator.generate("g" + seed + "-", rows));
+        controller.close();
+        System.out.println("Generated " + rows + " expenses up to " + end + " in " + dir.getPath());
+    }
+}
@@ -0,0 +1,243 @@
+package tools;
+
+import controller.ExpenseController;
+import model.Expense;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a weighted mix of add/update/delete/search/summary operations against a
+ * generated ledger for a fixed time and prints throughput, latency percentiles,
+ * heap growth and GC time as sorted key=value lines, so runs from different
+ * builds can be diffed. Operations are chosen from a seeded generator, and all
+ * dates (the generated history, the archive cutoff, the summary month and the
+ * ledger's own clock) are anchored on --end rather than today, so two runs see the
+ * same ledger.
+ *
+ * Usage: java -cp bin tools.SoakHarness [--rows 100000] [--seconds 60] [--seed 42]
+ *            [--mix add=20,update=20,delete=10,search=30,summary=20] [--end 2025-12-31]
+ *            [--archive-years 1] [--dir path]
+ */
+public class SoakHarness {
+    private static final String[] OPERATIONS = {"add", "update", "delete", "search", "summary"};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LedgerGenerator.parseArgs(args);
+        int rows = Integer.parseInt(options.getOrDefault("rows", "100000"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "60"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        double[] mix = parseMix(options.getOrDefault("mix", "add=20,update=20,delete=10,search=30,summary=20"));
+        LocalDate end = LocalDate.parse(options.getOrDefault("end", LedgerGenerator.DEFAULT_END));
+        int archiveYears = Integer.parseInt(options.getOrDefault("archive-years", "1"));
+        File dir;
+        if (options.containsKey("dir")) {
+            dir = new File(options.get("dir"));
+            LedgerGenerator.requireEmptyDir(dir);
+        } else {
+            dir = Files.createTempDirectory("expense-soak").toFile();
+        }
+
+        // Rolling windows and projections are computed as of --end, not the day of the run
+        Clock clock = Clock.fixed(end.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+        LedgerGenerator generator = new LedgerGenerator(seed, end.minusYears(3).plusDays(1), end);
+        ExpenseController seeded = new ExpenseController(dir, Runnable::run, clock);
+        seeded.addExpenses(generator.generate("s" + seed + "-", rows));
+        int archivedRows = archiveYears > 0
+                ? seeded.archiveExpensesBefore(end.minusYears(archiveYears).withDayOfYear(1))
+                : 0;
+        seeded.close();
+
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        long openStart = System.nanoTime();
+        ExpenseController controller = new ExpenseController(dir, io, clock);
+        long openNanos = System.nanoTime() - openStart;
+        List<String> ids = new ArrayList<>();
+        for (Expense expense : controller.getAllExpenses()) {
+            ids.add(expense.getId());
+        }
+
+        long heapStart = usedHeapAfterGc();
+        long gcCountStart = gcCount(), gcTimeStart = gcTimeMillis();
+        // Every latency is kept (8 bytes per op) so the percentiles are exact, not estimated
+        long[][] latencies = new long[OPERATIONS.length][1024];
+        int[] counts = new int[OPERATIONS.length];
+
+        long nextId = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long runStart = System.nanoTime();
+        while (System.nanoTime() < deadline) {
+            int op = pick(mix, generator);
+            if ((op == 1 || op == 2) && ids.isEmpty()) op = 0;
+
+            long start = System.nanoTime();
+            switch (op) {
+                case 0: {
+                    Expense expense = generator.nextExpense("r" + seed + "-" + nextId++);
+                    controller.addExpense(expense);
+                    ids.add(expense.getId());
+                    break;
+                }
+                case 1: {
+                    String id = ids.get(generator.nextInt(ids.size()));
+                    Expense values = generator.nextExpense(id);
+                    controller.updateExpense(id, values.getDate(), values.getCategory(),
+                            values.getAmount(), values.getDescription());
+                    break;
+                }
+                case 2: {
+                    int index = generator.nextInt(ids.size());
+                    controller.deleteExpense(ids.get(index));
+                    ids.set(index, ids.get(ids.size() - 1));
+                    ids.remove(ids.size() - 1);
+                    break;
+                }
+                case 3:
+                    controller.searchExpenses(generator.nextSearchTerm());
+                    break;
+                default: {
+                    // Same queries the summary dialog runs
+                    YearMonth month = YearMonth.from(end);
+                    controller.getTotalExpenses();
+                    controller.getMonthlyTotal(end.getYear(), end.getMonthValue());
+                    controller.getCategorySummary();
+                    controller.getRollingTotal(null, 30);
+                    controller.getAmountQuantiles(null, month, month, 0.5, 0.95);
+                    controller.getTopExpenses(month.atDay(1), month.atEndOfMonth(), 5);
+                    break;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (counts[op] == latencies[op].length) {
+                latencies[op] = Arrays.copyOf(latencies[op], counts[op] * 2);
+            }
+            latencies[op][counts[op]++] = elapsed;
+        }
+        long runNanos = System.nanoTime() - runStart;
+
+        controller.close();
+        io.shutdown();
+        io.awaitTermination(1, TimeUnit.MINUTES);
+        // Read before the forced collection below, so it does not count as workload GC
+        long gcCountEnd = gcCount(), gcTimeEnd = gcTimeMillis();
+        long heapEnd = usedHeapAfterGc();
+
+        Map<String, String> report = new TreeMap<>();
+        report.put("config.archive_years", String.valueOf(archiveYears));
+        report.put("config.end", end.toString());
+        report.put("config.java", System.getProperty("java.version"));
+        report.put("config.mix", options.getOrDefault("mix", "add=20,update=20,delete=10,search=30,summary=20"));
+        report.put("config.rows", String.valueOf(rows));
+        report.put("config.seconds", String.valueOf(seconds));
+        report.put("config.seed", String.valueOf(seed));
+        report.put("ledger.open_ms", format(openNanos / 1e6));
+        report.put("ledger.archived_rows", String.valueOf(archivedRows));
+        report.put("ledger.live_rows", String.valueOf(ids.size()));
+        long total = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            total += counts[i];
+            if (counts[i] == 0) continue;
+            long[] sorted = Arrays.copyOf(latencies[i], counts[i]);
+            Arrays.sort(sorted);
+            String prefix = "op." + OPERATIONS[i] + ".";
+            report.put(prefix + "count", String.valueOf(counts[i]));
+            report.put(prefix + "p50_us", format(percentile(sorted, 0.50) / 1000.0));
+            report.put(prefix + "p95_us", format(percentile(sorted, 0.95) / 1000.0));
+            report.put(prefix + "p99_us", format(percentile(sorted, 0.99) / 1000.0));
+            report.put(prefix + "max_us", format(sorted[sorted.length - 1] / 1000.0));
+        }
+        report.put("ops.total", String.valueOf(total));
+        report.put("ops.per_sec", format(total / (runNanos / 1e9)));
+        report.put("heap.start_mb", format(heapStart / 1048576.0));
+        report.put("heap.end_mb", format(heapEnd / 1048576.0));
+        report.put("heap.growth_mb", format((heapEnd - heapStart) / 1048576.0));
+        report.put("gc.count", String.valueOf(gcCountEnd - gcCountStart));
+        report.put("gc.time_ms", String.valueOf(gcTimeEnd - gcTimeStart));
+
+        for (Map.Entry<String, String> entry : report.entrySet()) {
+            System.out.println(entry.getKey() + "=" + entry.getValue());
+        }
+        if (!options.containsKey("dir")) {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static double[] parseMix(String mix) {
+        double[] weights = new double[OPERATIONS.length];
+        double sum = 0;
+        for (String part : mix.split(",")) {
+            String[] pair = part.split("=");
+            int op = Arrays.asList(OPERATIONS).indexOf(pair[0].trim());
+            if (op < 0 || pair.length != 2) {
+                throw new IllegalArgumentException("Unknown operation in mix: " + part);
+            }
+            weights[op] = Double.parseDouble(pair[1].trim());
+            sum += weights[op];
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= sum;
+        }
+        return weights;
+    }
+
+    private static int pick(double[] weights, LedgerGenerator generator) {
+        double r = generator.nextInt(1_000_000) / 1_000_000.0;
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    /** Nearest-rank percentile of an ascending array, e.g. 0.95 for p95. */
+    private static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTimeMillis() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
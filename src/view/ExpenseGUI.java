@@ -1,27 +1,29 @@
 package view;
 
 import controller.ExpenseController;
+import model.Currencies;
 import model.Expense;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ExpenseGUI extends JFrame {
     private ExpenseController controller;
     private JTable expenseTable;
     private DefaultTableModel tableModel;
     private JTextField dateField, amountField, descriptionField, searchField;
-    private JComboBox<String> categoryCombo;
+    private JComboBox<String> categoryCombo, currencyCombo;
     private JButton addButton, editButton, deleteButton, summaryButton, budgetButton, searchButton, refreshButton;
     
-    private static final String[] CATEGORIES = {
-        "Food", "Transport", "Bills", "Entertainment", "Shopping", 
-        "Healthcare", "Education", "Other"
+    private static final String[] CURRENCIES = {
+        "INR", "USD", "EUR", "GBP", "JPY", "AUD", "CAD"
     };
     
     public ExpenseGUI() {
@@ -53,7 +55,10 @@ public class ExpenseGUI extends JFrame {
         dateField = new JTextField(LocalDate.now().toString(), 15);
         amountField = new JTextField(15);
         descriptionField = new JTextField(20);
-        categoryCombo = new JComboBox<>(CATEGORIES);
+        categoryCombo = new JComboBox<>(Expense.CATEGORIES.toArray(new String[0]));
+        currencyCombo = new JComboBox<>(CURRENCIES);
+        currencyCombo.setEditable(true);
+        currencyCombo.setSelectedItem(controller.getBaseCurrency());
         
         gbc.gridx = 0; gbc.gridy = 0;
         panel.add(new JLabel("Date (YYYY-MM-DD):"), gbc);
@@ -75,11 +80,16 @@ public class ExpenseGUI extends JFrame {
         gbc.gridx = 3;
         panel.add(descriptionField, gbc);
         
+        gbc.gridx = 0; gbc.gridy = 2;
+        panel.add(new JLabel("Currency:"), gbc);
+        gbc.gridx = 1;
+        panel.add(currencyCombo, gbc);
+        
         return panel;
     }
     
     private JScrollPane createTablePanel() {
-        String[] columns = {"ID", "Date", "Category", "Amount", "Description"};
+        String[] columns = {"ID", "Date", "Category", "Amount", "Currency", "Description"};
         tableModel = new DefaultTableModel(columns, 0) {
             @Override
             public boolean isCellEditable(int row, int column) {
@@ -99,7 +109,8 @@ public class ExpenseGUI extends JFrame {
         expenseTable.getColumnModel().getColumn(1).setPreferredWidth(100);
         expenseTable.getColumnModel().getColumn(2).setPreferredWidth(120);
         expenseTable.getColumnModel().getColumn(3).setPreferredWidth(80);
-        expenseTable.getColumnModel().getColumn(4).setPreferredWidth(300);
+        expenseTable.getColumnModel().getColumn(4).setPreferredWidth(60);
+        expenseTable.getColumnModel().getColumn(5).setPreferredWidth(300);
         
         return new JScrollPane(expenseTable);
     }
@@ -157,21 +168,27 @@ public class ExpenseGUI extends JFrame {
             LocalDate date = LocalDate.parse(dateField.getText());
             String category = (String) categoryCombo.getSelectedItem();
             double amount = Double.parseDouble(amountField.getText());
+            String currency = selectedCurrency();
             String description = descriptionField.getText();
             
+            if (!Currencies.isValid(currency)) {
+                showInvalidCurrency(currency);
+                return;
+            }
+            
             if (description.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "Description cannot be empty!", 
                     "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
             
-            Expense expense = new Expense(date, category, amount, description);
+            Expense expense = new Expense(date, category, amount, currency, description);
             controller.addExpense(expense);
             
             if (controller.isBudgetExceeded(category)) {
                 JOptionPane.showMessageDialog(this, 
                     "Warning: Budget exceeded for category " + category + "!\n" +
-                    "Remaining budget: $" + String.format("%.2f", controller.getBudgetRemaining(category)),
+                    "Remaining budget: " + formatAmount(controller.getBudgetRemaining(category)),
                     "Budget Alert", JOptionPane.WARNING_MESSAGE);
             }
             
@@ -198,14 +215,20 @@ public class ExpenseGUI extends JFrame {
             LocalDate date = LocalDate.parse(dateField.getText());
             String category = (String) categoryCombo.getSelectedItem();
             double amount = Double.parseDouble(amountField.getText());
+            String currency = selectedCurrency();
             String description = descriptionField.getText();
             
-            controller.updateExpense(id, date, category, amount, description);
+            if (!Currencies.isValid(currency)) {
+                showInvalidCurrency(currency);
+                return;
+            }
+            
+            controller.updateExpense(id, date, category, amount, currency, description);
             
             if (controller.isBudgetExceeded(category)) {
                 JOptionPane.showMessageDialog(this, 
                     "Warning: Budget exceeded for category " + category + "!\n" +
-                    "Remaining budget: $" + String.format("%.2f", controller.getBudgetRemaining(category)),
+                    "Remaining budget: " + formatAmount(controller.getBudgetRemaining(category)),
                     "Budget Alert", JOptionPane.WARNING_MESSAGE);
             }
             
@@ -219,6 +242,17 @@ public class ExpenseGUI extends JFrame {
         }
     }
     
+    private String selectedCurrency() {
+        Object selected = currencyCombo.getSelectedItem();
+        return selected == null ? "" : selected.toString().trim().toUpperCase();
+    }
+    
+    private void showInvalidCurrency(String currency) {
+        JOptionPane.showMessageDialog(this, 
+            "Invalid currency '" + currency + "'. Use a three-letter code such as INR or USD.", 
+            "Input Error", JOptionPane.ERROR_MESSAGE);
+    }
+    
     private void deleteExpense() {
         int selectedRow = expenseTable.getSelectedRow();
         if (selectedRow == -1) {
@@ -233,10 +267,15 @@ public class ExpenseGUI extends JFrame {
         
         if (confirm == JOptionPane.YES_OPTION) {
             String id = (String) tableModel.getValueAt(selectedRow, 0);
-            controller.deleteExpense(id);
-            loadExpensesIntoTable();
-            clearInputFields();
-            JOptionPane.showMessageDialog(this, "Expense deleted successfully!");
+            try {
+                controller.deleteExpense(id);
+                loadExpensesIntoTable();
+                clearInputFields();
+                JOptionPane.showMessageDialog(this, "Expense deleted successfully!");
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage(), 
+                    "Delete Error", JOptionPane.ERROR_MESSAGE);
+            }
         }
     }
     
@@ -263,6 +302,12 @@ public class ExpenseGUI extends JFrame {
         StringBuilder summary = new StringBuilder();
         summary.append("=== EXPENSE SUMMARY ===\n\n");
         
+        Set<String> unconvertible = controller.getUnconvertibleCurrencies();
+        if (!unconvertible.isEmpty()) {
+            summary.append(String.format("WARNING: amounts in %s are left out of every total below\n"
+                + "(rates.csv has no rate to %s)\n\n", String.join(", ", unconvertible), controller.getBaseCurrency()));
+        }
+        
         LocalDate now = LocalDate.now();
         double monthlyTotal = controller.getMonthlyTotal(now.getYear(), now.getMonthValue());
         double totalExpenses = controller.getTotalExpenses();
@@ -270,14 +315,70 @@ public class ExpenseGUI extends JFrame {
         LocalDate weekStart = now.minusDays(now.getDayOfWeek().getValue() - 1);
         double weeklyTotal = controller.getWeeklyTotal(weekStart);
         
-        summary.append(String.format("Total Expenses: $%.2f\n", totalExpenses));
-        summary.append(String.format("This Month: $%.2f\n", monthlyTotal));
-        summary.append(String.format("This Week: $%.2f\n\n", weeklyTotal));
-        
+        summary.append(String.format("Total Expenses: %s\n", formatAmount(totalExpenses)));
+        summary.append(String.format("This Month: %s\n", formatAmount(monthlyTotal)));
+        summary.append(String.format("This Week: %s\n\n", formatAmount(weeklyTotal)));
+        
+        summary.append("--- Trends ---\n");
+        summary.append(String.format("Last 7 Days: %s (avg %s/day)\n",
+            formatAmount(controller.getRollingTotal(null, 7)), formatAmount(controller.getRollingAverage(null, 7))));
+        summary.append(String.format("Last 30 Days: %s (avg %s/day)\n",
+            formatAmount(controller.getRollingTotal(null, 30)), formatAmount(controller.getRollingAverage(null, 30))));
+        double monthChange = controller.getMonthOverMonthChange(null, YearMonth.from(now));
+        summary.append(Double.isNaN(monthChange) ? "vs Last Month: n/a\n"
+            : String.format("vs Last Month: %+.1f%%\n", monthChange * 100));
+        summary.append(String.format("Projected Month End: %s\n\n", formatAmount(controller.getProjectedMonthEnd(null))));
+
+        summary.append("--- 30-Day Rolling Total at Month End (This Year) ---\n");
+        double[] rolling = controller.getDailyRollingTotals(null, now.getYear(), 30);
+        for (YearMonth month = YearMonth.of(now.getYear(), 1); !month.isAfter(YearMonth.from(now)); month = month.plusMonths(1)) {
+            // The current month shows today's value, since its end is still ahead
+            LocalDate day = month.equals(YearMonth.from(now)) ? now : month.atEndOfMonth();
+            summary.append(String.format("%-15s: %s\n", month.getMonth(), formatAmount(rolling[day.getDayOfYear() - 1])));
+        }
+        int peakDay = 0;
+        for (int i = 1; i < now.getDayOfYear(); i++) {
+            if (rolling[i] > rolling[peakDay]) peakDay = i;
+        }
+        summary.append(String.format("Busiest 30 Days: %s (ending %s)\n\n", formatAmount(rolling[peakDay]),
+            LocalDate.ofYearDay(now.getYear(), peakDay + 1)));
+
         summary.append("--- Category Breakdown ---\n");
         Map<String, Double> categorySummary = controller.getCategorySummary();
         for (Map.Entry<String, Double> entry : categorySummary.entrySet()) {
-            summary.append(String.format("%-15s: $%.2f\n", entry.getKey(), entry.getValue()));
+            summary.append(String.format("%-15s: %s\n", entry.getKey(), formatAmount(entry.getValue())));
+        }
+        
+        summary.append("\n--- Projected Month End by Category ---\n");
+        for (String category : categorySummary.keySet()) {
+            double projected = controller.getProjectedMonthEnd(category);
+            if (projected == 0) continue;
+            summary.append(String.format("%-15s: %s\n", category, formatAmount(projected)));
+        }
+        
+        summary.append("\n--- Amount Distribution (This Month) ---\n");
+        YearMonth thisMonth = YearMonth.from(now);
+        for (String category : categorySummary.keySet()) {
+            double[] quantiles = controller.getAmountQuantiles(category, thisMonth, thisMonth, 0.5, 0.95);
+            if (Double.isNaN(quantiles[0])) continue;
+            summary.append(String.format("%-15s: Median %s, P95 %s\n",
+                category, formatAmount(quantiles[0]), formatAmount(quantiles[1])));
+        }
+
+        summary.append("\n--- Amount Histogram (This Month) ---\n");
+        Map<String, Long> histogram = controller.getAmountHistogram(null, thisMonth, thisMonth);
+        long largestBin = histogram.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        for (Map.Entry<String, Long> entry : histogram.entrySet()) {
+            int bar = largestBin == 0 ? 0 : (int) Math.round(20.0 * entry.getValue() / largestBin);
+            summary.append(String.format("%-15s: %5d %s\n", entry.getKey(), entry.getValue(),
+                "#".repeat(bar)));
+        }
+
+        summary.append("\n--- Largest Expenses This Quarter ---\n");
+        LocalDate quarterStart = now.withMonth((now.getMonthValue() - 1) / 3 * 3 + 1).withDayOfMonth(1);
+        for (Expense expense : controller.getTopExpenses(quarterStart, quarterStart.plusMonths(3).minusDays(1), 5)) {
+            summary.append(String.format("%s %-15s: %s %.2f %s\n", expense.getDateString(),
+                expense.getCategory(), expense.getCurrency(), expense.getAmount(), expense.getDescription()));
         }
         
         summary.append("\n--- Budget Status ---\n");
@@ -287,8 +388,8 @@ public class ExpenseGUI extends JFrame {
             double budget = entry.getValue();
             double remaining = controller.getBudgetRemaining(category);
             String status = remaining >= 0 ? "OK" : "EXCEEDED";
-            summary.append(String.format("%-15s: Budget $%.2f, Remaining $%.2f [%s]\n", 
-                category, budget, remaining, status));
+            summary.append(String.format("%-15s: Budget %s, Remaining %s [%s]\n", 
+                category, formatAmount(budget), formatAmount(remaining), status));
         }
         
         summaryArea.setText(summary.toString());
@@ -312,7 +413,7 @@ public class ExpenseGUI extends JFrame {
         JPanel inputPanel = new JPanel(new GridLayout(3, 2, 10, 10));
         inputPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         
-        JComboBox<String> budgetCategoryCombo = new JComboBox<>(CATEGORIES);
+        JComboBox<String> budgetCategoryCombo = new JComboBox<>(Expense.CATEGORIES.toArray(new String[0]));
         JTextField budgetAmountField = new JTextField();
         
         inputPanel.add(new JLabel("Category:"));
@@ -344,7 +445,7 @@ public class ExpenseGUI extends JFrame {
         StringBuilder budgetList = new StringBuilder("Current Budgets:\n\n");
         Map<String, Double> budgets = controller.getAllBudgets();
         for (Map.Entry<String, Double> entry : budgets.entrySet()) {
-            budgetList.append(String.format("%-15s: $%.2f\n", entry.getKey(), entry.getValue()));
+            budgetList.append(String.format("%-15s: %s\n", entry.getKey(), formatAmount(entry.getValue())));
         }
         currentBudgetsArea.setText(budgetList.toString());
         
@@ -373,7 +474,8 @@ public class ExpenseGUI extends JFrame {
                 expense.getId(),
                 expense.getDateString(),
                 expense.getCategory(),
-                String.format("$%.2f", expense.getAmount()),
+                String.format("%.2f", expense.getAmount()),
+                expense.getCurrency(),
                 expense.getDescription()
             };
             tableModel.addRow(row);
@@ -385,16 +487,21 @@ public class ExpenseGUI extends JFrame {
         if (selectedRow != -1) {
             dateField.setText((String) tableModel.getValueAt(selectedRow, 1));
             categoryCombo.setSelectedItem(tableModel.getValueAt(selectedRow, 2));
-            String amountStr = (String) tableModel.getValueAt(selectedRow, 3);
-            amountField.setText(amountStr.replace("$", ""));
-            descriptionField.setText((String) tableModel.getValueAt(selectedRow, 4));
+            amountField.setText((String) tableModel.getValueAt(selectedRow, 3));
+            currencyCombo.setSelectedItem(tableModel.getValueAt(selectedRow, 4));
+            descriptionField.setText((String) tableModel.getValueAt(selectedRow, 5));
         }
     }
     
+    private String formatAmount(double amount) {
+        return String.format("%s %.2f", controller.getBaseCurrency(), amount);
+    }
+    
     private void clearInputFields() {
         dateField.setText(LocalDate.now().toString());
         categoryCombo.setSelectedIndex(0);
         amountField.setText("");
+        currencyCombo.setSelectedItem(controller.getBaseCurrency());
         descriptionField.setText("");
         expenseTable.clearSelection();
     }
@@ -411,7 +518,7 @@ public class ExpenseGUI extends JFrame {
         JTextField endDateField = new JTextField(LocalDate.now().toString());
         JComboBox<String> filterCategoryCombo = new JComboBox<>();
         filterCategoryCombo.addItem("All Categories");
-        for (String cat : CATEGORIES) {
+        for (String cat : Expense.CATEGORIES) {
             filterCategoryCombo.addItem(cat);
         }
         
@@ -0,0 +1,113 @@
+package controller;
+
+import model.Expense;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Checks that archiving survives a restart: a run that stops after writing its
+ * segments but before rewriting expenses.csv must not count those rows twice,
+ * and opening the ledger again must not archive them a second time.
+ */
+public class ArchiveRestartTest {
+    private static final LocalDate CUTOFF = LocalDate.of(2024, 1, 1);
+
+    public static void main(String[] args) throws IOException {
+        crashBeforeLedgerRewrite();
+        archiveWithSavesNeverRun();
+        System.out.println("ArchiveRestartTest passed");
+    }
+
+    private static void crashBeforeLedgerRewrite() throws IOException {
+        File dir = Files.createTempDirectory("archive-restart").toFile();
+        try {
+            ExpenseController controller = new ExpenseController(dir, Runnable::run);
+            controller.addExpenses(sampleExpenses());
+            double total = controller.getTotalExpenses();
+            int searchHits = controller.searchExpenses("row").size();
+            File ledger = new File(dir, "expenses.csv");
+            File beforeArchive = new File(dir, "expenses-before-archive.csv");
+            Files.copy(ledger.toPath(), beforeArchive.toPath());
+
+            int archived = controller.archiveExpensesBefore(CUTOFF);
+            int live = controller.getAllExpenses().size();
+            controller.close();
+            check(archived > 0, "nothing was archived");
+
+            // Put the disk back the way a crash right after the segment writes leaves it:
+            // segments and marker present, expenses.csv still holding the archived rows
+            List<String> segments = new ArrayList<>();
+            for (File segment : new File(dir, "archive").listFiles((d, name) -> name.endsWith(".seg"))) {
+                segments.add(segment.getName());
+            }
+            Files.write(new File(dir, "archive/pending-archive.txt").toPath(), segments);
+            Files.move(beforeArchive.toPath(), ledger.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            for (int open = 1; open <= 2; open++) {
+                ExpenseController reopened = new ExpenseController(dir, Runnable::run);
+                checkClose(total, reopened.getTotalExpenses(), "total after reopen " + open);
+                check(reopened.searchExpenses("row").size() == searchHits, "search hits after reopen " + open);
+                check(reopened.getAllExpenses().size() == live, "live rows after reopen " + open);
+                check(reopened.archiveExpensesBefore(CUTOFF) == 0, "rows archived twice after reopen " + open);
+                reopened.close();
+            }
+            check(!new File(dir, "archive/pending-archive.txt").exists(), "marker left behind");
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    private static void archiveWithSavesNeverRun() throws IOException {
+        File dir = Files.createTempDirectory("archive-restart").toFile();
+        try {
+            // Queued saves are dropped, as if the process died before the I/O pool ran them
+            ExpenseController controller = new ExpenseController(dir, task -> { });
+            controller.addExpenses(sampleExpenses());
+            double total = controller.getTotalExpenses();
+            int archived = controller.archiveExpensesBefore(CUTOFF);
+            int live = controller.getAllExpenses().size();
+            check(archived > 0, "nothing was archived");
+
+            ExpenseController reopened = new ExpenseController(dir, Runnable::run);
+            checkClose(total, reopened.getTotalExpenses(), "total after dropped saves");
+            check(reopened.getAllExpenses().size() == live, "live rows after dropped saves");
+            reopened.close();
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    private static List<Expense> sampleExpenses() {
+        List<Expense> rows = new ArrayList<>();
+        LocalDate date = LocalDate.of(2021, 1, 1);
+        for (int i = 0; i < 600; i++) {
+            String category = Expense.CATEGORIES.get(i % Expense.CATEGORIES.size());
+            rows.add(new Expense("E" + i, date.plusDays(i * 3L), category, 10 + i % 97, "INR", "row " + i));
+        }
+        return rows;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    private static void checkClose(double expected, double actual, String message) {
+        check(Math.abs(expected - actual) < 0.005, message + ": expected " + expected + " but was " + actual);
+    }
+
+    private static void deleteTree(File dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}